@@ -6,27 +6,47 @@
 
 package com.abenezermulugeta.securecapita;
 
+import com.abenezermulugeta.securecapita.provider.BoundedPasswordEncoder;
+import com.abenezermulugeta.securecapita.utils.BCryptUtils;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.security.servlet.SecurityAutoConfiguration;
 import org.springframework.context.annotation.Bean;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.time.Duration;
 
 /**
  * The exclude property ignores the specified classes in the array
  * I ignored the SecurityAutoConfiguration class because, Spring Security will make all my requests to the server 'Unauthorized'
  */
+@EnableScheduling
 @SpringBootApplication(exclude = { SecurityAutoConfiguration.class })
 public class SecurecapitaApplication {
-	private static final int PASSWORD_STRENGTH = 12;
+	// The configured strength is the floor, the calibration can only raise it. Hashes below the strength in use are
+	// replaced on the next login and never lowered, so instances that calibrate differently converge on the highest one
+	private static final int MINIMUM_PASSWORD_STRENGTH = 12;
+	private static final int MAXIMUM_PASSWORD_STRENGTH = 16;
 
 	public static void main(String[] args) {
 		SpringApplication.run(SecurecapitaApplication.class, args);
 	}
 
+	/**
+	 * BCrypt runs on its own bounded pool instead of the request threads, the pool size defaults to the number of cores
+	 */
 	@Bean
-	public BCryptPasswordEncoder passwordEncoder() {
-		return new BCryptPasswordEncoder(PASSWORD_STRENGTH);
+	public BoundedPasswordEncoder passwordEncoder(@Value("${application.password-encoder.pool-size:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int poolSize,
+												  @Value("${application.password-encoder.queue-capacity:100}") int queueCapacity,
+												  @Value("${application.password-encoder.strength:12}") int minimumStrength,
+												  @Value("${application.password-encoder.target-duration:0ms}") Duration targetDuration,
+												  MeterRegistry meterRegistry) {
+		if (minimumStrength < MINIMUM_PASSWORD_STRENGTH || minimumStrength > MAXIMUM_PASSWORD_STRENGTH)
+			throw new IllegalArgumentException("The password encoder strength has to be between " + MINIMUM_PASSWORD_STRENGTH + " and " + MAXIMUM_PASSWORD_STRENGTH + ", it is " + minimumStrength);
+		int strength = targetDuration.isZero() ? minimumStrength : BCryptUtils.calibrate(targetDuration, minimumStrength, MAXIMUM_PASSWORD_STRENGTH);
+		return new BoundedPasswordEncoder(strength, poolSize, queueCapacity, meterRegistry);
 	}
 
 }
@@ -0,0 +1,49 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.cache;
+
+import com.abenezermulugeta.securecapita.domain.Event;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.abenezermulugeta.securecapita.query.EventQuery.SELECT_EVENTS_QUERY;
+
+/**
+ * In-memory copy of the Events table, which only changes with the schema. User events are read without joining Events,
+ * the type and the description are looked up here by the event id instead.
+ * The events are loaded on first use and loaded again when an unknown event id shows up.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EventCatalog {
+    private final NamedParameterJdbcTemplate jdbc;
+    private volatile Map<Long, Event> eventsById;
+
+    public Event getById(Long eventId) {
+        Map<Long, Event> events = eventsById;
+        Event event = events == null ? null : events.get(eventId);
+        return event != null ? event : reload().get(eventId);
+    }
+
+    public synchronized Map<Long, Event> reload() {
+        eventsById = jdbc.query(SELECT_EVENTS_QUERY, (resultSet, rowNum) -> Event.builder()
+                        .id(resultSet.getLong("id"))
+                        .type(resultSet.getString("type"))
+                        .description(resultSet.getString("description"))
+                        .build())
+                .stream().collect(Collectors.toUnmodifiableMap(Event::getId, Function.identity()));
+        log.info("Loaded {} events", eventsById.size());
+        return eventsById;
+    }
+}
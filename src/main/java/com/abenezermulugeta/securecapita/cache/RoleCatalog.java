@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.cache;
+
+import com.abenezermulugeta.securecapita.domain.Role;
+import com.abenezermulugeta.securecapita.rowmapper.RoleRowMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.abenezermulugeta.securecapita.query.RoleQuery.SELECT_ROLES_QUERY;
+
+/**
+ * Immutable in-memory snapshot of the Roles table indexed by id and by name, so resolving a role is a map lookup
+ * instead of a query or a join. The snapshot is replaced as a whole: on first use, after every role write made through
+ * the RoleRepository, on a schedule (to pick up writes made by other instances) and when an unknown role id shows up.
+ * The roles in the snapshot are shared, they must not be modified.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RoleCatalog {
+    private final NamedParameterJdbcTemplate jdbc;
+    private volatile Snapshot snapshot;
+
+    public Role getById(Long roleId) {
+        Role role = getSnapshot().rolesById.get(roleId);
+        return role != null ? role : load().rolesById.get(roleId);
+    }
+
+    public Role getByName(String roleName) {
+        return getSnapshot().rolesByName.get(roleName);
+    }
+
+    // Ordered by id
+    public List<Role> getAll() {
+        return getSnapshot().roles;
+    }
+
+    @Scheduled(fixedDelayString = "${application.cache.roles.refresh-interval:PT5M}", initialDelayString = "${application.cache.roles.refresh-interval:PT5M}")
+    public void refresh() {
+        reload();
+    }
+
+    public void reload() {
+        load();
+    }
+
+    private synchronized Snapshot load() {
+        List<Role> roles = jdbc.query(SELECT_ROLES_QUERY, new RoleRowMapper()).stream().sorted(Comparator.comparing(Role::getId)).toList();
+        snapshot = new Snapshot(roles);
+        log.debug("Loaded {} roles", roles.size());
+        return snapshot;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        return current != null ? current : load();
+    }
+
+    private static class Snapshot {
+        private final List<Role> roles;
+        private final Map<Long, Role> rolesById;
+        private final Map<String, Role> rolesByName;
+
+        private Snapshot(Collection<Role> roles) {
+            this.roles = List.copyOf(roles);
+            this.rolesById = roles.stream().collect(Collectors.toUnmodifiableMap(Role::getId, Function.identity()));
+            this.rolesByName = roles.stream().collect(Collectors.toUnmodifiableMap(Role::getName, Function.identity()));
+        }
+    }
+}
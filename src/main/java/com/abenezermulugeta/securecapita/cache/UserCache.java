@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.cache;
+
+import com.abenezermulugeta.securecapita.domain.UserPrincipal;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+/**
+ * Size bounded and expiring cache of users together with their role, it sits in front of the profile lookups. The
+ * cached users have no password, and nothing that grants access reads through the cache: authentication and the
+ * refresh of tokens read the user from the database, so a stale entry (evictions are local to this instance) can
+ * only show an outdated profile until it expires.
+ * Users are loaded inside the compute of their id, so an eviction that runs during a load waits for it and then
+ * removes what was loaded. The email cache only maps an email to the id. Hit, miss and eviction counts are
+ * published as the 'cache.*' metrics.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserCache {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.cache.users.enabled:true}")
+    private boolean enabled;
+
+    @Value("${application.cache.users.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${application.cache.users.time-to-live:5m}")
+    private Duration timeToLive;
+
+    private Cache<Long, UserPrincipal> usersById;
+    private Cache<String, Long> userIdsByEmail;
+
+    @PostConstruct
+    public void init() {
+        usersById = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(timeToLive).recordStats().build();
+        userIdsByEmail = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(timeToLive).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, usersById, "users");
+        CaffeineCacheMetrics.monitor(meterRegistry, userIdsByEmail, "user-emails");
+        log.info("User cache enabled: {}, maximum size: {}, time to live: {}", enabled, maximumSize, timeToLive);
+    }
+
+    public UserPrincipal getByEmail(String email, Function<String, Long> idLoader, Function<Long, UserPrincipal> loader) {
+        if (!enabled) return loader.apply(idLoader.apply(email));
+        Long userId = userIdsByEmail.get(getEmailKey(email), key -> idLoader.apply(email));
+        return usersById.get(userId, loader);
+    }
+
+    public UserPrincipal getById(Long userId, Function<Long, UserPrincipal> loader) {
+        if (!enabled) return loader.apply(userId);
+        return usersById.get(userId, loader);
+    }
+
+    /**
+     * Has to be called after every write to the user or to the role of the user. Inside a transaction the user is
+     * evicted again once it commits, a load between the write and the commit would otherwise cache the previous values.
+     */
+    public void evict(Long userId) {
+        usersById.invalidate(userId);
+        afterCommit(() -> usersById.invalidate(userId));
+    }
+
+    // The email of a deleted user can be registered again with another id
+    public void evictDeleted(Long userId) {
+        evict(userId);
+        userIdsByEmail.asMap().values().removeIf(userId::equals);
+        afterCommit(() -> userIdsByEmail.asMap().values().removeIf(userId::equals));
+    }
+
+    public void evictAll() {
+        usersById.invalidateAll();
+        userIdsByEmail.invalidateAll();
+        afterCommit(() -> {
+            usersById.invalidateAll();
+            userIdsByEmail.invalidateAll();
+        });
+    }
+
+    private void afterCommit(Runnable eviction) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                eviction.run();
+            }
+        });
+    }
+
+    private String getEmailKey(String email) {
+        return email.trim().toLowerCase();
+    }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.cache;
+
+import com.abenezermulugeta.securecapita.domain.VerifiedToken;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Size bounded cache of verified tokens, so a token sent again by the same client skips the signature verification.
+ * Entries are keyed by the SHA-256 of the token and expire when the token does, the raw token itself isn't kept.
+ * Only tokens that passed the verification get an entry, so forged tokens can't fill it, and the size bound caps what
+ * a flood of valid ones can take. Revocation and expiry are still checked on every request by the TokenProvider.
+ * Hit, miss and eviction counts are published as the 'cache.*' metrics.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VerifiedTokenCache {
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.cache.verified-tokens.enabled:false}")
+    private boolean enabled;
+
+    @Value("${application.cache.verified-tokens.maximum-size:10000}")
+    private long maximumSize;
+
+    private Cache<ByteBuffer, VerifiedToken> verifiedTokens;
+
+    @PostConstruct
+    public void init() {
+        verifiedTokens = Caffeine.newBuilder().maximumSize(maximumSize).expireAfter(new TokenExpiry()).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "verified-tokens");
+        log.info("Verified token cache enabled: {}, maximum size: {}", enabled, maximumSize);
+    }
+
+    /**
+     * Returns the verified token from the cache or from the verifier, the exceptions of the verifier are thrown
+     * as they are and nothing is cached for the token.
+     */
+    public VerifiedToken get(String token, Function<String, VerifiedToken> verifier) {
+        if (!enabled) return verifier.apply(token);
+        VerifiedToken verifiedToken = verifiedTokens.get(hash(token), key -> verifier.apply(token).toBuilder().token(null).build());
+        return verifiedToken.toBuilder().token(token).build();
+    }
+
+    private static ByteBuffer hash(String token) {
+        try {
+            return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException exception) {
+            // Every Java platform has to support SHA-256
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    // An entry lives until the token expires, reading it doesn't extend that
+    private static class TokenExpiry implements Expiry<ByteBuffer, VerifiedToken> {
+        @Override
+        public long expireAfterCreate(ByteBuffer key, VerifiedToken verifiedToken, long currentTime) {
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, verifiedToken.getExpiresAt().getTime() - System.currentTimeMillis()));
+        }
+
+        @Override
+        public long expireAfterUpdate(ByteBuffer key, VerifiedToken verifiedToken, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, verifiedToken, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(ByteBuffer key, VerifiedToken verifiedToken, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
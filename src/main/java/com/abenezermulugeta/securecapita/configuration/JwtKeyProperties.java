@@ -0,0 +1,35 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.configuration;
+
+import com.abenezermulugeta.securecapita.enumeration.KeyStatus;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The JWT signing keys under 'jwt.keys', each with its id (the kid header of the tokens it signs), secret and status.
+ * 'jwt.secret' is the key of the tokens issued before the key ids, it only verifies tokens without a kid header
+ * once keys are configured, and it is the only key (with the id 'default') when none are.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "jwt")
+public class JwtKeyProperties {
+    private String secret;
+    private List<Key> keys = new ArrayList<>();
+
+    @Data
+    public static class Key {
+        private String id;
+        private String secret;
+        private KeyStatus status = KeyStatus.VERIFY;
+    }
+}
@@ -9,21 +9,38 @@ package com.abenezermulugeta.securecapita.configuration;
 import com.abenezermulugeta.securecapita.filter.CustomAuthorizationFilter;
 import com.abenezermulugeta.securecapita.handler.CustomAccessDeniedHandler;
 import com.abenezermulugeta.securecapita.handler.CustomAuthenticationEntryPoint;
+import com.abenezermulugeta.securecapita.metrics.LoginMetrics;
+import com.abenezermulugeta.securecapita.provider.BoundedPasswordEncoder;
+import com.abenezermulugeta.securecapita.provider.RehashingAuthenticationProvider;
+import com.abenezermulugeta.securecapita.security.HasAnyPermission;
+import com.abenezermulugeta.securecapita.security.PermissionAuthorizationManager;
 import lombok.RequiredArgsConstructor;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.Pointcut;
+import org.springframework.aop.support.ComposablePointcut;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.ProviderManager;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.authorization.method.AuthorizationManagerBeforeMethodInterceptor;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
 import static org.springframework.http.HttpMethod.DELETE;
+import static org.springframework.http.HttpMethod.GET;
+import static com.abenezermulugeta.securecapita.enumeration.Permission.DELETE_CUSTOMER;
+import static com.abenezermulugeta.securecapita.enumeration.Permission.DELETE_USER;
+import static com.abenezermulugeta.securecapita.enumeration.Permission.READ_SYSTEM;
+import static com.abenezermulugeta.securecapita.security.PermissionAuthorizationManager.hasAnyPermission;
 import static org.springframework.security.config.http.SessionCreationPolicy.STATELESS;
 
 @Configuration
@@ -31,11 +48,13 @@ import static org.springframework.security.config.http.SessionCreationPolicy.STA
 @EnableMethodSecurity
 @RequiredArgsConstructor
 public class SecurityConfig {
-    private final BCryptPasswordEncoder passwordEncoder;
+    private final BoundedPasswordEncoder passwordEncoder;
     private final CustomAccessDeniedHandler accessDeniedHandler;
     private final CustomAuthenticationEntryPoint authenticationEntryPoint;
     private final UserDetailsService userDetailsService;
+    private final UserDetailsPasswordService userDetailsPasswordService;
     private final CustomAuthorizationFilter customAuthorizationFilter;
+    private final LoginMetrics loginMetrics;
     private static final String[] PUBLIC_URLS = {
             "/users/login/**",
             "/users/register/**",
@@ -56,8 +75,16 @@ public class SecurityConfig {
         http.authorizeHttpRequests().requestMatchers(PUBLIC_URLS).permitAll();
 
         // 'DELETE' requests should be only for users with 'DELETE:USER' or 'DELETE:CUSTOMER' authorities accordingly
-        http.authorizeHttpRequests().requestMatchers(DELETE, "/user/delete/**").hasAnyAuthority("DELETE:USER");
-        http.authorizeHttpRequests().requestMatchers(DELETE, "/customer/delete/**").hasAnyAuthority("DELETE:CUSTOMER");
+        // The permissions are checked with bit tests (see PermissionAuthorizationManager)
+        http.authorizeHttpRequests().requestMatchers(DELETE, "/users/delete/**").access(hasAnyPermission(DELETE_USER));
+        http.authorizeHttpRequests().requestMatchers(DELETE, "/customer/delete/**").access(hasAnyPermission(DELETE_CUSTOMER));
+
+        // The health check is called by the load balancer and the liveness/readiness probes without a token, it only
+        // reports the status (the details are not shown)
+        http.authorizeHttpRequests().requestMatchers(GET, "/actuator/health/**").permitAll();
+
+        // The metrics and the password strength report are for operators, not for every authenticated user
+        http.authorizeHttpRequests().requestMatchers("/actuator/**").access(hasAnyPermission(READ_SYSTEM));
 
         // Custom exception for access denial of access
         http.exceptionHandling().accessDeniedHandler(accessDeniedHandler).authenticationEntryPoint(authenticationEntryPoint);
@@ -76,9 +103,20 @@ public class SecurityConfig {
     public AuthenticationManager authenticationManager() {
         // DaoAuthenticationProvider is an implementation of AuthenticationProvider interface
         // It is responsible for authenticating a user based on information stored in a data access object (DAO)
-        DaoAuthenticationProvider authProvider = new DaoAuthenticationProvider();
-        authProvider.setUserDetailsService(userDetailsService);
-        authProvider.setPasswordEncoder(passwordEncoder);
+        // This one also replaces password hashes with an outdated strength in the background after a successful login
+        DaoAuthenticationProvider authProvider = new RehashingAuthenticationProvider(passwordEncoder, userDetailsPasswordService);
+        // Both are wrapped to record the database and bcrypt phases of the login latency
+        authProvider.setUserDetailsService(email -> loginMetrics.record(LoginMetrics.DATABASE, () -> userDetailsService.loadUserByUsername(email)));
+        authProvider.setPasswordEncoder(loginMetrics.timed(passwordEncoder));
         return new ProviderManager(authProvider);
     }
+
+    // Checks @HasAnyPermission on methods with bit tests, next to the @PreAuthorize support of @EnableMethodSecurity
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor hasAnyPermissionAdvisor() {
+        Pointcut pointcut = new ComposablePointcut(AnnotationMatchingPointcut.forMethodAnnotation(HasAnyPermission.class))
+                .union(new AnnotationMatchingPointcut(HasAnyPermission.class, true));
+        return new AuthorizationManagerBeforeMethodInterceptor(pointcut, new PermissionAuthorizationManager.MethodManager());
+    }
 }
@@ -0,0 +1,23 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.domain;
+
+import com.abenezermulugeta.securecapita.enumeration.VerificationType;
+import lombok.Builder;
+import lombok.Getter;
+
+// A message of the EmailOutbox table claimed by the EmailDispatcher, it is rendered from the template of its type
+@Getter
+@Builder
+public class EmailMessage {
+    private final Long id;
+    private final String recipient;
+    private final String firstName;
+    private final VerificationType type;
+    private final String url;
+    private final int attempts;
+}
@@ -0,0 +1,19 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.domain;
+
+import lombok.Builder;
+import lombok.Getter;
+
+// A row of the Events table, these are held in memory by the EventCatalog
+@Getter
+@Builder
+public class Event {
+    private final Long id;
+    private final String type;
+    private final String description;
+}
@@ -0,0 +1,20 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.domain;
+
+import lombok.Builder;
+import lombok.Getter;
+
+// A message of the SmsOutbox table claimed by the SmsDispatcher
+@Getter
+@Builder
+public class SmsMessage {
+    private final Long id;
+    private final String phone;
+    private final String body;
+    private final int attempts;
+}
@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.domain;
+
+import com.abenezermulugeta.securecapita.enumeration.EventType;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * An event waiting in the UserEventWriter queue to be inserted into UserEvents.
+ * The user is identified either by id or by email (when the id is not known, like for a failed login).
+ */
+@Getter
+@Builder
+public class UserEvent {
+    private final Long userId;
+    private final String email;
+    private final EventType type;
+    private final String device;
+    private final String ipAddress;
+    private final LocalDateTime createdAt;
+}
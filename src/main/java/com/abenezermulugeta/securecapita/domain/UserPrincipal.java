@@ -8,24 +8,33 @@ package com.abenezermulugeta.securecapita.domain;
 
 import com.abenezermulugeta.securecapita.dto.UserDTO;
 import com.abenezermulugeta.securecapita.dtomapper.UserDTOMapper;
-import lombok.RequiredArgsConstructor;
+import com.abenezermulugeta.securecapita.enumeration.Permission;
+import lombok.Getter;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Collection;
+import java.util.List;
 
-import static java.util.Arrays.stream;
-import static java.util.stream.Collectors.toList;
-
-@RequiredArgsConstructor
 public class UserPrincipal implements UserDetails {
     private final User user;
+    @Getter
     private final Role role;
+    // The permissions of the role are parsed once, the authorities list is shared between principals with the same permissions
+    @Getter
+    private final long permissions;
+    private final List<GrantedAuthority> authorities;
+
+    public UserPrincipal(User user, Role role) {
+        this.user = user;
+        this.role = role;
+        this.permissions = Permission.toBits(role.getPermission());
+        this.authorities = Permission.toAuthorities(this.permissions);
+    }
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        return stream(this.role.getPermission().split(",".trim())).map(SimpleGrantedAuthority::new).collect(toList());
+        return this.authorities;
     }
 
     @Override
@@ -58,6 +67,10 @@ public class UserPrincipal implements UserDetails {
         return this.user.isEnabled();
     }
 
+    public Long getUserId() {
+        return this.user.getId();
+    }
+
     public UserDTO getUser() {
         return UserDTOMapper.fromUser(this.user, role);
     }
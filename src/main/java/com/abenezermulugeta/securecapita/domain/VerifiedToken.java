@@ -0,0 +1,36 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.domain;
+
+import com.abenezermulugeta.securecapita.enumeration.TokenType;
+import lombok.Builder;
+import lombok.Getter;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Holds the values of a JWT whose signature and claims have already been verified by the TokenProvider.
+ * The token is decoded once per request and this object is passed around instead of the raw token string.
+ */
+@Getter
+@Builder(toBuilder = true)
+public class VerifiedToken {
+    private final String token;
+    private final TokenType type;
+    // The jti claim, null for tokens issued before it was added
+    private final String tokenId;
+    private final String subject;
+    private final Long userId;
+    private final String role;
+    // Only set on refresh tokens
+    private final String familyId;
+    private final Date issuedAt;
+    private final Date expiresAt;
+    private final List<GrantedAuthority> authorities;
+}
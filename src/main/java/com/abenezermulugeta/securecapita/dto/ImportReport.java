@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+// The result of a bulk user import, the rows are numbered from 1 in the order they were sent
+@Getter
+@AllArgsConstructor
+public class ImportReport {
+    private final int total;
+    private final int imported;
+    private final List<Failure> failures;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Failure {
+        private final int row;
+        private final String email;
+        private final String reason;
+    }
+}
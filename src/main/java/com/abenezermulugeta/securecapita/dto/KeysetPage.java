@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
+/**
+ * A page of a keyset (cursor) paginated listing. The next cursor is passed back to get the following page,
+ * it is null on the last page.
+ */
+@Getter
+@AllArgsConstructor
+@JsonInclude(NON_NULL)
+public class KeysetPage<T> {
+    private final List<T> items;
+    private final String nextCursor;
+}
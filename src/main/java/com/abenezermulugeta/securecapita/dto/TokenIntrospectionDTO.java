@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.util.Date;
+import java.util.List;
+
+import static com.fasterxml.jackson.annotation.JsonInclude.Include.NON_NULL;
+
+/**
+ * The result of introspecting one token. Only active tokens carry the values of the token,
+ * inactive ones carry the reason instead.
+ */
+@Getter
+@Builder
+@JsonInclude(NON_NULL)
+public class TokenIntrospectionDTO {
+    private final boolean active;
+    private final String subject;
+    private final Long userId;
+    private final String role;
+    private final List<String> authorities;
+    private final Date issuedAt;
+    private final Date expiresAt;
+    private final String reason;
+}
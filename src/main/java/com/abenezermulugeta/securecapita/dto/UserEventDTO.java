@@ -0,0 +1,23 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@Builder
+public class UserEventDTO {
+    private final Long id;
+    private final String type;
+    private final String description;
+    private final String device;
+    private final String ipAddress;
+    private final LocalDateTime createdAt;
+}
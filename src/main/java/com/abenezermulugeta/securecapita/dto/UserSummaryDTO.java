@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.dto;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+// The lean projection of a user used by listings, it leaves out the profile text and the password hash
+@Getter
+@Builder
+public class UserSummaryDTO {
+    private final Long id;
+    private final String firstName;
+    private final String lastName;
+    private final String email;
+    private final String imageUrl;
+    private final boolean enabled;
+    private final boolean notLocked;
+    private final boolean usingMfa;
+    private final LocalDateTime createdAt;
+    private final String roleName;
+}
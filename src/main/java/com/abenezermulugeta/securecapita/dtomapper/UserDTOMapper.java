@@ -8,8 +8,12 @@ package com.abenezermulugeta.securecapita.dtomapper;
 
 import com.abenezermulugeta.securecapita.domain.Role;
 import com.abenezermulugeta.securecapita.domain.User;
+import com.abenezermulugeta.securecapita.domain.VerifiedToken;
 import com.abenezermulugeta.securecapita.dto.UserDTO;
 import org.springframework.beans.BeanUtils;
+import org.springframework.security.core.GrantedAuthority;
+
+import static java.util.stream.Collectors.joining;
 
 public class UserDTOMapper {
     public static UserDTO fromUser(User user) {
@@ -26,6 +30,16 @@ public class UserDTOMapper {
         return userDto;
     }
 
+    // Only the values carried by the token claims are set, the rest of the profile has to be loaded when needed
+    public static UserDTO fromVerifiedToken(VerifiedToken verifiedToken) {
+        UserDTO userDto = new UserDTO();
+        userDto.setId(verifiedToken.getUserId());
+        userDto.setEmail(verifiedToken.getSubject());
+        userDto.setRoleName(verifiedToken.getRole());
+        userDto.setPermissions(verifiedToken.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(joining(",")));
+        return userDto;
+    }
+
     public static User toUser(UserDTO userDto) {
         User user = new User();
         BeanUtils.copyProperties(userDto, user);
@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.email;
+
+import com.abenezermulugeta.securecapita.domain.EmailMessage;
+import com.abenezermulugeta.securecapita.enumeration.OutboxStatus;
+import com.abenezermulugeta.securecapita.enumeration.VerificationType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.abenezermulugeta.securecapita.query.EmailQuery.*;
+import static java.util.Map.of;
+
+/**
+ * Sends the emails of the EmailOutbox table in batches on a fixed size pool, a batch is sent over a single SMTP
+ * connection. Every poll claims at most as many due emails as the idle batches of the pool can take: they are locked
+ * with SKIP LOCKED, so other instances claim other emails, and leased, so an email claimed by an instance that stops
+ * before sending it is claimed again. Sent emails are deleted, the ones that failed are retried with exponential
+ * backoff until the maximum number of attempts.
+ *
+ * Metrics: 'executor.*' tagged name=email, 'securecapita.email.sent', 'securecapita.email.retried' and 'securecapita.email.failed'.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class EmailDispatcher {
+    private static final String POOL_NAME = "email";
+    private static final int MAXIMUM_ERROR_LENGTH = 255;
+    private final NamedParameterJdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final JavaMailSender mailSender;
+    private final EmailTemplates emailTemplates;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.email.from:noreply@securecapita.com}")
+    private String from;
+
+    @Value("${application.email.dispatcher.pool-size:2}")
+    private int poolSize;
+
+    @Value("${application.email.dispatcher.batch-size:50}")
+    private int batchSize;
+
+    // How long a claimed email is reserved for the instance that claimed it, it has to be longer than a batch can take
+    @Value("${application.email.dispatcher.lease:5m}")
+    private Duration lease;
+
+    @Value("${application.email.dispatcher.maximum-attempts:6}")
+    private int maximumAttempts;
+
+    @Value("${application.email.dispatcher.initial-backoff:30s}")
+    private Duration initialBackoff;
+
+    @Value("${application.email.dispatcher.maximum-backoff:30m}")
+    private Duration maximumBackoff;
+
+    private ThreadPoolExecutor executor;
+    private Counter sentCounter;
+    private Counter retriedCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        // One batch waiting per thread at most, the emails stay in the table until a batch has room for them
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(poolSize), runnable -> {
+            Thread thread = new Thread(runnable, POOL_NAME + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        new ExecutorServiceMetrics(executor, POOL_NAME, Tags.empty()).bindTo(meterRegistry);
+        sentCounter = Counter.builder("securecapita.email.sent").register(meterRegistry);
+        retriedCounter = Counter.builder("securecapita.email.retried").register(meterRegistry);
+        failedCounter = Counter.builder("securecapita.email.failed").description("Emails given up after the maximum number of attempts").register(meterRegistry);
+        log.info("Email dispatcher pool size: {}, batch size: {}, maximum attempts: {}", poolSize, batchSize, maximumAttempts);
+    }
+
+    @Scheduled(fixedDelayString = "${application.email.dispatcher.poll-interval:PT1S}")
+    public void dispatch() {
+        int batches = executor.getQueue().remainingCapacity();
+        if (batches == 0) return;
+        List<EmailMessage> emails = claim(batches * batchSize);
+        for (int start = 0; start < emails.size(); start += batchSize) {
+            List<EmailMessage> batch = emails.subList(start, Math.min(start + batchSize, emails.size()));
+            try {
+                executor.execute(() -> send(batch));
+            } catch (RejectedExecutionException exception) {
+                // Only when the pool is shutting down, the emails are claimed again once their lease runs out
+                log.warn("{} emails were not dispatched: {}", batch.size(), exception.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private List<EmailMessage> claim(int limit) {
+        Instant now = Instant.now();
+        return transactionTemplate.execute(status -> {
+            List<EmailMessage> emails = jdbc.query(SELECT_DUE_EMAILS_QUERY, of("now", Timestamp.from(now), "limit", limit), (resultSet, rowNum) ->
+                    EmailMessage.builder()
+                            .id(resultSet.getLong("id"))
+                            .recipient(resultSet.getString("recipient"))
+                            .firstName(resultSet.getString("first_name"))
+                            .type(VerificationType.valueOf(resultSet.getString("type")))
+                            .url(resultSet.getString("url"))
+                            .attempts(resultSet.getInt("attempts"))
+                            .build());
+            if (!emails.isEmpty()) {
+                jdbc.update(CLAIM_EMAILS_QUERY, of("ids", emails.stream().map(EmailMessage::getId).toList(), "leaseUntil", Timestamp.from(now.plus(lease))));
+            }
+            return emails;
+        });
+    }
+
+    private void send(List<EmailMessage> batch) {
+        // The messages are the keys of the failures reported by the mail sender, they are told apart by identity
+        Map<SimpleMailMessage, EmailMessage> emailsByMessage = new IdentityHashMap<>();
+        batch.forEach(email -> emailsByMessage.put(toMailMessage(email), email));
+        Map<Object, Exception> failures = Map.of();
+        try {
+            mailSender.send(emailsByMessage.keySet().toArray(SimpleMailMessage[]::new));
+        } catch (MailSendException exception) {
+            failures = exception.getFailedMessages();
+            // Without the failed messages the whole batch failed, like when the connection couldn't be opened
+            if (failures.isEmpty()) failures = allFailed(emailsByMessage, exception);
+        } catch (Exception exception) {
+            failures = allFailed(emailsByMessage, exception);
+        }
+        List<Long> sent = new ArrayList<>();
+        for (Map.Entry<SimpleMailMessage, EmailMessage> entry : emailsByMessage.entrySet()) {
+            Exception failure = failures.get(entry.getKey());
+            if (failure == null) {
+                sent.add(entry.getValue().getId());
+            } else {
+                failed(entry.getValue(), failure);
+            }
+        }
+        if (!sent.isEmpty()) {
+            try {
+                // The emails hold verification urls, they aren't kept once they are sent
+                jdbc.update(DELETE_EMAILS_QUERY, of("ids", sent));
+                sentCounter.increment(sent.size());
+            } catch (Exception exception) {
+                // The emails would be sent again once their lease runs out
+                log.error(exception.getMessage());
+            }
+        }
+    }
+
+    private SimpleMailMessage toMailMessage(EmailMessage email) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom(from);
+        message.setTo(email.getRecipient());
+        message.setSubject(emailTemplates.getSubject(email.getType()));
+        message.setText(emailTemplates.render(email.getType(), email.getFirstName(), email.getUrl()));
+        return message;
+    }
+
+    private Map<Object, Exception> allFailed(Map<SimpleMailMessage, EmailMessage> emailsByMessage, Exception exception) {
+        Map<Object, Exception> failures = new IdentityHashMap<>();
+        emailsByMessage.keySet().forEach(message -> failures.put(message, exception));
+        return failures;
+    }
+
+    private void failed(EmailMessage email, Exception exception) {
+        int attempts = email.getAttempts() + 1;
+        boolean givenUp = attempts >= maximumAttempts;
+        try {
+            jdbc.update(UPDATE_FAILED_EMAIL_QUERY, new MapSqlParameterSource()
+                    .addValue("id", email.getId())
+                    .addValue("status", (givenUp ? OutboxStatus.FAILED : OutboxStatus.PENDING).name())
+                    .addValue("attempts", attempts)
+                    .addValue("nextAttemptAt", Timestamp.from(Instant.now().plus(getBackoff(attempts))))
+                    .addValue("lastError", StringUtils.abbreviate(String.valueOf(exception.getMessage()), MAXIMUM_ERROR_LENGTH)));
+        } catch (Exception updateException) {
+            // The email is claimed again once its lease runs out
+            log.error(updateException.getMessage());
+        }
+        if (givenUp) {
+            failedCounter.increment();
+            log.error("Email {} failed after {} attempts: {}", email.getId(), attempts, exception.getMessage());
+        } else {
+            retriedCounter.increment();
+            log.warn("Email {} failed on attempt {}, retrying: {}", email.getId(), attempts, exception.getMessage());
+        }
+    }
+
+    // Doubles with every attempt up to the maximum, the jitter keeps emails that failed together from being retried together
+    private Duration getBackoff(int attempts) {
+        long backoff = Math.min(initialBackoff.toMillis() << Math.min(attempts - 1, 20), maximumBackoff.toMillis());
+        return Duration.ofMillis(backoff + ThreadLocalRandom.current().nextLong(backoff / 5 + 1));
+    }
+}
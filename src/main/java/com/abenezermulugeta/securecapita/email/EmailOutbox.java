@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.email;
+
+import com.abenezermulugeta.securecapita.domain.User;
+import com.abenezermulugeta.securecapita.enumeration.VerificationType;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import static com.abenezermulugeta.securecapita.query.EmailQuery.INSERT_EMAIL_QUERY;
+
+/**
+ * Writes verification emails to the EmailOutbox table instead of sending them. The email has to be written in the
+ * transaction of the verification url it carries, so it is sent if and only if the url is committed, and the request
+ * returns without waiting on the SMTP server. The EmailDispatcher sends it afterwards.
+ */
+@Component
+@RequiredArgsConstructor
+public class EmailOutbox {
+    private final NamedParameterJdbcTemplate jdbc;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(String firstName, String email, String verificationUrl, VerificationType verificationType) {
+        jdbc.update(INSERT_EMAIL_QUERY, new MapSqlParameterSource()
+                .addValue("recipient", email)
+                .addValue("firstName", firstName)
+                .addValue("type", verificationType.name())
+                .addValue("url", verificationUrl)
+                .addValue("now", new Timestamp(System.currentTimeMillis())));
+    }
+
+    // One batch for the users of an import, the url of a user has the index of the user
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueueAll(List<User> users, List<String> verificationUrls, VerificationType verificationType) {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        SqlParameterSource[] parameters = new SqlParameterSource[users.size()];
+        for (int i = 0; i < users.size(); i++) {
+            parameters[i] = new MapSqlParameterSource()
+                    .addValue("recipient", users.get(i).getEmail())
+                    .addValue("firstName", users.get(i).getFirstName())
+                    .addValue("type", verificationType.name())
+                    .addValue("url", verificationUrls.get(i))
+                    .addValue("now", now);
+        }
+        jdbc.batchUpdate(INSERT_EMAIL_QUERY, parameters);
+    }
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.email;
+
+import com.abenezermulugeta.securecapita.enumeration.VerificationType;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The email templates of the verification types, read from templates/email/{type}.txt and compiled once on startup
+ * into their literal parts and placeholders, so rendering an email is a single pass over the parts.
+ * A template can use the ${firstName} and ${url} placeholders.
+ */
+@Slf4j
+@Component
+public class EmailTemplates {
+    private static final Map<VerificationType, String> SUBJECTS = Map.of(
+            VerificationType.ACCOUNT, "SecureCapita - Account Verification",
+            VerificationType.PASSWORD, "SecureCapita - Reset Password Request");
+    private final Map<VerificationType, Template> templates = new EnumMap<>(VerificationType.class);
+
+    @PostConstruct
+    public void init() throws IOException {
+        for (VerificationType verificationType : VerificationType.values()) {
+            String path = "templates/email/" + verificationType.getType() + ".txt";
+            try (InputStream inputStream = new ClassPathResource(path).getInputStream()) {
+                templates.put(verificationType, Template.compile(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)));
+            }
+        }
+        log.info("Compiled email templates: {}", templates.keySet());
+    }
+
+    public String getSubject(VerificationType verificationType) {
+        return SUBJECTS.get(verificationType);
+    }
+
+    public String render(VerificationType verificationType, String firstName, String url) {
+        return templates.get(verificationType).render(Map.of("firstName", Objects.toString(firstName, ""), "url", Objects.toString(url, "")));
+    }
+
+    // Even parts are literals, odd parts are the names of the placeholders between them. A placeholder without a value
+    // renders empty and an unterminated one is kept as text
+    record Template(List<String> parts, int length) {
+        private static final String PLACEHOLDER_START = "${";
+        private static final String PLACEHOLDER_END = "}";
+
+        static Template compile(String text) {
+            List<String> parts = new ArrayList<>();
+            int position = 0;
+            int start;
+            while ((start = text.indexOf(PLACEHOLDER_START, position)) >= 0) {
+                int end = text.indexOf(PLACEHOLDER_END, start);
+                if (end < 0) break;
+                parts.add(text.substring(position, start));
+                parts.add(text.substring(start + PLACEHOLDER_START.length(), end));
+                position = end + PLACEHOLDER_END.length();
+            }
+            parts.add(text.substring(position));
+            return new Template(List.copyOf(parts), text.length());
+        }
+
+        String render(Map<String, String> values) {
+            StringBuilder builder = new StringBuilder(length + 128);
+            for (int i = 0; i < parts.size(); i++) {
+                builder.append(i % 2 == 0 ? parts.get(i) : values.getOrDefault(parts.get(i), ""));
+            }
+            return builder.toString();
+        }
+    }
+}
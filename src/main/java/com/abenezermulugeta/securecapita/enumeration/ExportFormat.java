@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.enumeration;
+
+import com.abenezermulugeta.securecapita.exception.ApiException;
+
+public enum ExportFormat {
+    NDJSON("application/x-ndjson", "ndjson"),
+    CSV("text/csv", "csv");
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    public String getExtension() {
+        return this.extension;
+    }
+
+    public static ExportFormat from(String format) {
+        for (ExportFormat exportFormat : values()) {
+            if (exportFormat.name().equalsIgnoreCase(format.trim())) return exportFormat;
+        }
+        throw new ApiException("Export format not supported: " + format + ". Use ndjson or csv.");
+    }
+}
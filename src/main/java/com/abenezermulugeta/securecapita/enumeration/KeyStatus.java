@@ -0,0 +1,17 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.enumeration;
+
+// Lifecycle of a JWT signing key, see KeyRing
+public enum KeyStatus {
+    // Signs the new tokens and verifies, exactly one key is active
+    ACTIVE,
+    // Only verifies, either a key about to become active or the previous active key until its tokens expire
+    VERIFY,
+    // Neither signs nor verifies, the tokens signed with it are rejected
+    RETIRED
+}
@@ -0,0 +1,17 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.enumeration;
+
+// Status of a message in an outbox table, sent messages are deleted
+public enum OutboxStatus {
+    // Waiting for its next attempt
+    PENDING,
+    // Claimed by a dispatcher, it is claimed again when its lease runs out before it was sent
+    SENDING,
+    // Every attempt failed, it is kept for inspection
+    FAILED
+}
@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.enumeration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * The fixed registry of permissions a role can hold (the comma separated values of Roles.permission).
+ * Every permission is its own GrantedAuthority and owns one bit, so a set of permissions is a long and checking a
+ * permission is a bit test. The authority lists are built once for every combination and shared.
+ *
+ * That table holds 2^n lists for n permissions: 512 lists (about 20 KB) for the 9 permissions of today and 4096 lists
+ * (about 250 KB) at the MAXIMUM_PERMISSIONS bound. Past the bound the class fails to load instead of growing the table
+ * exponentially, the lists would then have to be built on demand (see PermissionCheckBenchmark for what they save).
+ *
+ * The bits are also sent in compact access tokens, so new permissions are only added at the end. Changing the bit of an
+ * existing permission (removing or reordering) needs a new REGISTRY_VERSION, tokens of another version are not trusted.
+ */
+@Slf4j
+public enum Permission implements GrantedAuthority {
+    READ_USER("READ:USER"),
+    READ_CUSTOMER("READ:CUSTOMER"),
+    UPDATE_USER("UPDATE:USER"),
+    UPDATE_CUSTOMER("UPDATE:CUSTOMER"),
+    CREATE_USER("CREATE:USER"),
+    CREATE_CUSTOMER("CREATE:CUSTOMER"),
+    DELETE_USER("DELETE:USER"),
+    DELETE_CUSTOMER("DELETE:CUSTOMER"),
+    // Infrastructure access for other services and operators: token introspection and the actuator endpoints
+    READ_SYSTEM("READ:SYSTEM");
+
+    public static final int REGISTRY_VERSION = 1;
+    private static final int MAXIMUM_PERMISSIONS = 12;
+    private static final Map<String, Permission> PERMISSIONS_BY_AUTHORITY = Arrays.stream(values()).collect(Collectors.toUnmodifiableMap(Permission::getAuthority, Function.identity()));
+    private static final List<List<GrantedAuthority>> AUTHORITIES_BY_BITS = getAuthoritiesByBits();
+    private final String authority;
+
+    Permission(String authority) {
+        this.authority = authority;
+    }
+
+    @Override
+    public String getAuthority() {
+        return this.authority;
+    }
+
+    public long getBit() {
+        return 1L << ordinal();
+    }
+
+    public static Permission fromAuthority(String authority) {
+        return PERMISSIONS_BY_AUTHORITY.get(authority.trim());
+    }
+
+    public static long toBits(Permission... permissions) {
+        long bits = 0;
+        for (Permission permission : permissions) bits |= permission.getBit();
+        return bits;
+    }
+
+    // Parses a comma separated permission list like the one of Roles.permission, unknown permissions are left out
+    public static long toBits(String permissions) {
+        return permissions == null ? 0 : toBits(Arrays.asList(permissions.split(",")));
+    }
+
+    public static long toBits(Collection<String> authorities) {
+        long bits = 0;
+        for (String authority : authorities) {
+            if (authority.isBlank()) continue;
+            Permission permission = fromAuthority(authority);
+            if (permission != null) bits |= permission.getBit();
+            else log.warn("Unknown permission ignored: {}", authority);
+        }
+        return bits;
+    }
+
+    // Returns a shared immutable list, ordered like the enum
+    public static List<GrantedAuthority> toAuthorities(long bits) {
+        return AUTHORITIES_BY_BITS.get((int) (bits & ((1L << values().length) - 1)));
+    }
+
+    private static List<List<GrantedAuthority>> getAuthoritiesByBits() {
+        Permission[] permissions = values();
+        if (permissions.length > MAXIMUM_PERMISSIONS) {
+            throw new IllegalStateException("The authority lists are precomputed for at most " + MAXIMUM_PERMISSIONS + " permissions, there are " + permissions.length);
+        }
+        List<List<GrantedAuthority>> authoritiesByBits = new ArrayList<>(1 << permissions.length);
+        for (int bits = 0; bits < 1 << permissions.length; bits++) {
+            List<GrantedAuthority> authorities = new ArrayList<>();
+            for (Permission permission : permissions) {
+                if ((bits & permission.getBit()) != 0) authorities.add(permission);
+            }
+            authoritiesByBits.add(List.copyOf(authorities));
+        }
+        return List.copyOf(authoritiesByBits);
+    }
+}
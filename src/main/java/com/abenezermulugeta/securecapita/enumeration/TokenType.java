@@ -0,0 +1,15 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.enumeration;
+
+// The token_type claim of a JWT, a token is only accepted where its type is expected
+public enum TokenType {
+    // Authenticates the requests of the API
+    ACCESS,
+    // Only exchanged for new tokens on /users/refresh/token and revoked on logout
+    REFRESH
+}
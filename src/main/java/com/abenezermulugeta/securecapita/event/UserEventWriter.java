@@ -0,0 +1,193 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.event;
+
+import com.abenezermulugeta.securecapita.domain.UserEvent;
+import com.abenezermulugeta.securecapita.enumeration.EventType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static com.abenezermulugeta.securecapita.query.EventQuery.INSERT_USER_EVENT_BY_EMAIL_QUERY;
+import static com.abenezermulugeta.securecapita.query.EventQuery.INSERT_USER_EVENT_BY_USER_ID_QUERY;
+
+/**
+ * Writes the security audit trail (UserEvents) without adding an insert to the request.
+ * Events go into a bounded queue and a single background thread inserts them with JDBC batches, a batch is written
+ * when it is full or when the flush interval has passed. When the queue is full the overflow policy either drops the
+ * oldest event or blocks the request until there is room.
+ *
+ * Metrics: 'securecapita.user.events.queue' (queued events), 'securecapita.user.events.flush' (batch insert time),
+ * 'securecapita.user.events.written', 'securecapita.user.events.dropped' and 'securecapita.user.events.failed'.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UserEventWriter {
+    public enum OverflowPolicy { DROP_OLDEST, BLOCK }
+
+    private static final int MAXIMUM_DEVICE_LENGTH = 100;
+    private final NamedParameterJdbcTemplate jdbc;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.user-events.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${application.user-events.batch-size:500}")
+    private int batchSize;
+
+    @Value("${application.user-events.flush-interval:1s}")
+    private Duration flushInterval;
+
+    @Value("${application.user-events.overflow-policy:DROP_OLDEST}")
+    private OverflowPolicy overflowPolicy;
+
+    private BlockingQueue<UserEvent> queue;
+    private Thread writerThread;
+    private volatile boolean running;
+    private Timer flushTimer;
+    private Counter writtenCounter;
+    private Counter droppedCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        flushTimer = Timer.builder("securecapita.user.events.flush").publishPercentiles(0.5, 0.95, 0.99).register(meterRegistry);
+        writtenCounter = Counter.builder("securecapita.user.events.written").register(meterRegistry);
+        droppedCounter = Counter.builder("securecapita.user.events.dropped").register(meterRegistry);
+        failedCounter = Counter.builder("securecapita.user.events.failed").register(meterRegistry);
+        Gauge.builder("securecapita.user.events.queue", queue, BlockingQueue::size).register(meterRegistry);
+        running = true;
+        writerThread = new Thread(this::run, "user-events-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        log.info("User event writer queue capacity: {}, batch size: {}, flush interval: {}, overflow policy: {}", queueCapacity, batchSize, flushInterval, overflowPolicy);
+    }
+
+    public void publish(EventType type, Long userId) {
+        enqueue(getUserEvent(type).userId(userId).build());
+    }
+
+    // Used when only the email is known, the event is not written if no user has this email
+    public void publish(EventType type, String email) {
+        enqueue(getUserEvent(type).email(email).build());
+    }
+
+    // Writes what is left in the queue before the data source is closed
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writerThread.interrupt();
+        writerThread.join(flushInterval.toMillis() * 2);
+        List<UserEvent> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void enqueue(UserEvent userEvent) {
+        if (overflowPolicy == OverflowPolicy.BLOCK) {
+            try {
+                queue.put(userEvent);
+            } catch (InterruptedException exception) {
+                droppedCounter.increment();
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
+        while (!queue.offer(userEvent)) {
+            if (queue.poll() != null) droppedCounter.increment();
+        }
+    }
+
+    private void run() {
+        List<UserEvent> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                // Waits for the first event, then takes whatever else is already queued up to the batch size
+                UserEvent userEvent = queue.poll(flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+                if (userEvent == null) continue;
+                batch.add(userEvent);
+                long flushAt = System.nanoTime() + flushInterval.toNanos();
+                while (batch.size() < batchSize && System.nanoTime() < flushAt) {
+                    if (queue.drainTo(batch, batchSize - batch.size()) == 0) {
+                        UserEvent next = queue.poll(flushAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+                        if (next != null) batch.add(next);
+                    }
+                }
+            } catch (InterruptedException exception) {
+                // Interrupted on shutdown, the current batch is written below and the rest by shutdown()
+            }
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<UserEvent> batch) {
+        if (batch.isEmpty()) return;
+        List<SqlParameterSource> byUserId = new ArrayList<>();
+        List<SqlParameterSource> byEmail = new ArrayList<>();
+        batch.forEach(userEvent -> (userEvent.getUserId() != null ? byUserId : byEmail).add(getParameters(userEvent)));
+        try {
+            flushTimer.record(() -> {
+                if (!byUserId.isEmpty()) jdbc.batchUpdate(INSERT_USER_EVENT_BY_USER_ID_QUERY, byUserId.toArray(SqlParameterSource[]::new));
+                if (!byEmail.isEmpty()) jdbc.batchUpdate(INSERT_USER_EVENT_BY_EMAIL_QUERY, byEmail.toArray(SqlParameterSource[]::new));
+            });
+            writtenCounter.increment(batch.size());
+        } catch (Exception exception) {
+            // The audit trail never fails a request, the lost events are counted instead
+            failedCounter.increment(batch.size());
+            log.error("Could not write {} user events: {}", batch.size(), exception.getMessage());
+        }
+    }
+
+    private SqlParameterSource getParameters(UserEvent userEvent) {
+        return new MapSqlParameterSource()
+                .addValue("userId", userEvent.getUserId())
+                .addValue("email", userEvent.getEmail())
+                .addValue("type", userEvent.getType().name())
+                .addValue("device", userEvent.getDevice())
+                .addValue("ipAddress", userEvent.getIpAddress())
+                .addValue("createdAt", userEvent.getCreatedAt());
+    }
+
+    // The device and the IP address are taken from the current request, they are left empty outside of a request
+    private UserEvent.UserEventBuilder getUserEvent(EventType type) {
+        UserEvent.UserEventBuilder builder = UserEvent.builder().type(type).createdAt(LocalDateTime.now());
+        if (RequestContextHolder.getRequestAttributes() instanceof ServletRequestAttributes attributes) {
+            HttpServletRequest request = attributes.getRequest();
+            String device = request.getHeader(HttpHeaders.USER_AGENT);
+            builder.device(device != null && device.length() > MAXIMUM_DEVICE_LENGTH ? device.substring(0, MAXIMUM_DEVICE_LENGTH) : device)
+                    .ipAddress(request.getRemoteAddr());
+        }
+        return builder;
+    }
+}
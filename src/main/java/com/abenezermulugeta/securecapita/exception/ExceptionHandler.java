@@ -169,6 +169,34 @@ public class ExceptionHandler extends ResponseEntityExceptionHandler implements
                         .build(), HttpStatus.LOCKED);
     }
 
+    // This method handles requests that were shed because a bounded resource (like the password hashing pool) is full
+    @org.springframework.web.bind.annotation.ExceptionHandler(ServerBusyException.class)
+    public ResponseEntity<HttpResponse> handleServerBusyException(ServerBusyException exception) {
+        log.error(exception.getMessage());
+        return new ResponseEntity<>(
+                HttpResponse.builder()
+                        .timeStamp(LocalDateTime.now().toString())
+                        .reason(exception.getMessage())
+                        .developerMessage(exception.getMessage())
+                        .httpStatus(HttpStatus.SERVICE_UNAVAILABLE)
+                        .statusCode(HttpStatus.SERVICE_UNAVAILABLE.value())
+                        .build(), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    // This method handles requests that went over a rate limit
+    @org.springframework.web.bind.annotation.ExceptionHandler(TooManyRequestsException.class)
+    public ResponseEntity<HttpResponse> handleTooManyRequestsException(TooManyRequestsException exception) {
+        log.error(exception.getMessage());
+        return new ResponseEntity<>(
+                HttpResponse.builder()
+                        .timeStamp(LocalDateTime.now().toString())
+                        .reason(exception.getMessage())
+                        .developerMessage(exception.getMessage())
+                        .httpStatus(HttpStatus.TOO_MANY_REQUESTS)
+                        .statusCode(HttpStatus.TOO_MANY_REQUESTS.value())
+                        .build(), HttpStatus.TOO_MANY_REQUESTS);
+    }
+
     // This method handles exceptions thrown when access to resources is denied
     @org.springframework.web.bind.annotation.ExceptionHandler(AccessDeniedException.class)
     public ResponseEntity<HttpResponse> handleAccessDeniedException(AccessDeniedException exception) {
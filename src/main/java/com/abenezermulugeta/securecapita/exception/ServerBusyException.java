@@ -0,0 +1,12 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.exception;
+
+// Thrown when a bounded resource (like the password hashing pool) is full and the request is shed instead of queued
+public class ServerBusyException extends RuntimeException {
+    public ServerBusyException(String message) {super(message);}
+}
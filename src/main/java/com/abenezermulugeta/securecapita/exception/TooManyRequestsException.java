@@ -0,0 +1,12 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.exception;
+
+// Thrown when a client goes over a rate limit, the request is rejected without doing any work
+public class TooManyRequestsException extends RuntimeException {
+    public TooManyRequestsException(String message) {super(message);}
+}
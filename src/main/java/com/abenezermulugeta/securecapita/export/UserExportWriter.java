@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.export;
+
+import com.abenezermulugeta.securecapita.enumeration.ExportFormat;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Writes every row of the user export query to the output stream as soon as it is read, as one JSON object per line
+ * (NDJSON) or as CSV. No row is kept after it is written, so the memory used does not depend on the number of users.
+ * The columns are the ones of UserRowMapper without the password.
+ */
+public class UserExportWriter implements RowCallbackHandler, AutoCloseable {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    private static final String[] COLUMNS = { "id", "first_name", "last_name", "email", "address", "phone", "title", "bio", "image_url", "enabled", "non_locked", "using_mfa", "created_at" };
+    private static final String FORMULA_PREFIXES = "=+-@\t\r";
+    private final ExportFormat format;
+    private final Writer writer;
+    private final JsonGenerator jsonGenerator;
+    private long rows;
+
+    public UserExportWriter(ExportFormat format, OutputStream outputStream) throws IOException {
+        this.format = format;
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, UTF_8), 64 * 1024);
+        if (format == ExportFormat.NDJSON) {
+            this.jsonGenerator = JSON_FACTORY.createGenerator(writer);
+            this.jsonGenerator.setRootValueSeparator(new SerializedString("\n"));
+        } else {
+            this.jsonGenerator = null;
+            this.writer.write(String.join(",", COLUMNS));
+            this.writer.write("\r\n");
+        }
+    }
+
+    @Override
+    public void processRow(ResultSet resultSet) throws SQLException {
+        try {
+            if (format == ExportFormat.NDJSON) writeJson(resultSet);
+            else writeCsv(resultSet);
+            rows++;
+        } catch (IOException exception) {
+            // The client went away or the connection broke, this stops reading the result set
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (jsonGenerator != null) {
+            jsonGenerator.writeRaw('\n');
+            jsonGenerator.close();
+        }
+        writer.close();
+    }
+
+    private void writeJson(ResultSet resultSet) throws SQLException, IOException {
+        jsonGenerator.writeStartObject();
+        jsonGenerator.writeNumberField("id", resultSet.getLong("id"));
+        jsonGenerator.writeStringField("firstName", resultSet.getString("first_name"));
+        jsonGenerator.writeStringField("lastName", resultSet.getString("last_name"));
+        jsonGenerator.writeStringField("email", resultSet.getString("email"));
+        jsonGenerator.writeStringField("address", resultSet.getString("address"));
+        jsonGenerator.writeStringField("phone", resultSet.getString("phone"));
+        jsonGenerator.writeStringField("title", resultSet.getString("title"));
+        jsonGenerator.writeStringField("bio", resultSet.getString("bio"));
+        jsonGenerator.writeStringField("imageUrl", resultSet.getString("image_url"));
+        jsonGenerator.writeBooleanField("enabled", resultSet.getBoolean("enabled"));
+        jsonGenerator.writeBooleanField("notLocked", resultSet.getBoolean("non_locked"));
+        jsonGenerator.writeBooleanField("usingMfa", resultSet.getBoolean("using_mfa"));
+        jsonGenerator.writeStringField("createdAt", getCreatedAt(resultSet));
+        jsonGenerator.writeEndObject();
+    }
+
+    private void writeCsv(ResultSet resultSet) throws SQLException, IOException {
+        for (int i = 0; i < COLUMNS.length; i++) {
+            if (i > 0) writer.write(',');
+            writer.write(escapeCsv(switch (COLUMNS[i]) {
+                case "enabled", "non_locked", "using_mfa" -> String.valueOf(resultSet.getBoolean(COLUMNS[i]));
+                case "created_at" -> getCreatedAt(resultSet);
+                default -> resultSet.getString(COLUMNS[i]);
+            }));
+        }
+        writer.write("\r\n");
+    }
+
+    private String getCreatedAt(ResultSet resultSet) throws SQLException {
+        Timestamp createdAt = resultSet.getTimestamp("created_at");
+        return createdAt == null ? null : createdAt.toLocalDateTime().toString();
+    }
+
+    // RFC 4180, values with a comma, a quote or a line break are quoted and their quotes doubled. Values a spreadsheet
+    // would run as a formula (CSV injection) get a leading quote first, so they are opened as text
+    private String escapeCsv(String value) {
+        if (value == null) return "";
+        if (!value.isEmpty() && FORMULA_PREFIXES.indexOf(value.charAt(0)) >= 0) value = "'" + value;
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
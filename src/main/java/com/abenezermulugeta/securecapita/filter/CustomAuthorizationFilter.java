@@ -6,6 +6,8 @@
 
 package com.abenezermulugeta.securecapita.filter;
 
+import com.abenezermulugeta.securecapita.cache.VerifiedTokenCache;
+import com.abenezermulugeta.securecapita.domain.VerifiedToken;
 import com.abenezermulugeta.securecapita.provider.TokenProvider;
 import com.abenezermulugeta.securecapita.utils.ExceptionUtils;
 import jakarta.servlet.FilterChain;
@@ -16,15 +18,12 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Map;
 import java.util.Optional;
 
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
@@ -34,6 +33,7 @@ import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 @Slf4j
 public class CustomAuthorizationFilter extends OncePerRequestFilter {
     private final TokenProvider tokenProvider;
+    private final VerifiedTokenCache verifiedTokenCache;
     private static final String[] PUBLIC_ROUTES = {
             "/users/login",
             "/users/register",
@@ -42,19 +42,16 @@ public class CustomAuthorizationFilter extends OncePerRequestFilter {
     };
     private static final String HTTP_OPTIONS_METHOD = "OPTIONS";
     private static final String TOKEN_PREFIX = "Bearer ";
-    protected static final String TOKEN_KEY = "token";
-    protected static final String EMAIL_KEY = "email";
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         try {
-            Map<String, String> values = getRequestValues(request);
-            String token = getTokenFromRequest(request);
-            if(tokenProvider.isTokenValid(values.get(EMAIL_KEY), token)) {
-                List<GrantedAuthority> authorities = tokenProvider.getAuthorities(values.get(TOKEN_KEY));
-
+            // The token is verified only once, the subject, expiry and authorities are read from the verified token.
+            // A token that was already verified by an earlier request is taken from the cache without checking its signature again
+            VerifiedToken verifiedToken = verifiedTokenCache.get(getTokenFromRequest(request), token -> tokenProvider.verifyToken(token, request));
+            if(tokenProvider.isAccessTokenValid(verifiedToken)) {
                 // Setting the Authentication object for the servlet/ request, this can be accessed from anywhere in the code.
-                Authentication authentication = tokenProvider.getAuthentication(values.get(EMAIL_KEY), authorities, request);
+                Authentication authentication = tokenProvider.getAuthentication(verifiedToken, request);
 
                 // Set the authenticated user to the context
                 SecurityContextHolder.getContext().setAuthentication(authentication);
@@ -79,9 +76,6 @@ public class CustomAuthorizationFilter extends OncePerRequestFilter {
                         Arrays.asList(PUBLIC_ROUTES).contains(request.getRequestURI());
     }
 
-    private Map<String, String> getRequestValues(HttpServletRequest request) {
-        return Map.of(EMAIL_KEY, tokenProvider.getSubject(getTokenFromRequest(request), request), TOKEN_KEY, getTokenFromRequest(request));
-    }
     private String getTokenFromRequest(HttpServletRequest request) {
         return Optional.ofNullable(request.getHeader(AUTHORIZATION))
                 .filter(header -> header.startsWith(TOKEN_PREFIX))
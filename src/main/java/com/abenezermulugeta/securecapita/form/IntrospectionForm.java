@@ -0,0 +1,18 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.form;
+
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class IntrospectionForm {
+    @NotEmpty(message = "Tokens cannot be empty.")
+    private List<String> tokens;
+}
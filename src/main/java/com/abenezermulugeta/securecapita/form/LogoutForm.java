@@ -0,0 +1,15 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.form;
+
+import lombok.Data;
+
+@Data
+public class LogoutForm {
+    // Optional, revoked together with the access token of the request
+    private String refreshToken;
+}
@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.form;
+
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+// The profile values a user can change, a value left out of the request (null) keeps the stored one
+@Data
+public class UpdateUserForm {
+    @Size(max = 50, message = "First name cannot be longer than 50 characters.")
+    @Pattern(regexp = ".*\\S.*", message = "First name cannot be empty.")
+    private String firstName;
+    @Size(max = 50, message = "Last name cannot be longer than 50 characters.")
+    @Pattern(regexp = ".*\\S.*", message = "Last name cannot be empty.")
+    private String lastName;
+    @Size(max = 255, message = "Address cannot be longer than 255 characters.")
+    private String address;
+    @Size(max = 30, message = "Phone cannot be longer than 30 characters.")
+    private String phone;
+    @Size(max = 50, message = "Title cannot be longer than 50 characters.")
+    private String title;
+    @Size(max = 255, message = "Bio cannot be longer than 255 characters.")
+    private String bio;
+}
@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Supplier;
+
+/**
+ * Records the latency of each phase of a login under the 'securecapita.login' timer, tagged by phase:
+ * 'database' (loading the user and role), 'bcrypt' (checking the password) and 'signing' (creating the tokens).
+ * The end to end latency of the endpoint is already recorded by the 'http.server.requests' metric.
+ */
+@Component
+@RequiredArgsConstructor
+public class LoginMetrics {
+    public static final String DATABASE = "database";
+    public static final String BCRYPT = "bcrypt";
+    public static final String SIGNING = "signing";
+    private static final String LOGIN_TIMER = "securecapita.login";
+    private final MeterRegistry meterRegistry;
+
+    public <T> T record(String phase, Supplier<T> supplier) {
+        return Timer.builder(LOGIN_TIMER)
+                .tag("phase", phase)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry)
+                .record(supplier);
+    }
+
+    // Wraps the encoder used by the authentication provider so the password check is recorded as the 'bcrypt' phase
+    public PasswordEncoder timed(PasswordEncoder passwordEncoder) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                return passwordEncoder.encode(rawPassword);
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return record(BCRYPT, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+            }
+
+            @Override
+            public boolean upgradeEncoding(String encodedPassword) {
+                return passwordEncoder.upgradeEncoding(encodedPassword);
+            }
+        };
+    }
+}
@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.metrics;
+
+import com.abenezermulugeta.securecapita.provider.BoundedPasswordEncoder;
+import com.abenezermulugeta.securecapita.service.UserService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * Reports how many stored password hashes there are for each BCrypt strength, next to the strength new hashes get.
+ * Available under /actuator/passwordstrength, it shows how far the rehashing on login has converged.
+ */
+@Component
+@Endpoint(id = "passwordstrength")
+@RequiredArgsConstructor
+public class PasswordStrengthEndpoint {
+    private final UserService userService;
+    private final BoundedPasswordEncoder passwordEncoder;
+
+    @ReadOperation
+    public Map<String, Object> passwordStrength() {
+        return Map.of("currentStrength", passwordEncoder.getStrength(), "usersByStrength", userService.countUsersByPasswordStrength());
+    }
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.provider;
+
+import com.abenezermulugeta.securecapita.exception.ServerBusyException;
+import com.abenezermulugeta.securecapita.utils.BCryptUtils;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the hashing and matching of passwords on its own fixed size pool with a bounded queue, so a burst of
+ * logins or registrations cannot take over the request threads used by the rest of the API.
+ * When the queue is full the request fails fast with a ServerBusyException (503) instead of waiting.
+ *
+ * Any stored hash with a strength lower than the configured one is reported by upgradeEncoding(), so the hash
+ * gets replaced on the next successful login (see RehashingAuthenticationProvider).
+ *
+ * Metrics: 'executor.*' tagged name=bcrypt (queue depth, active threads), 'securecapita.bcrypt.wait' (time spent in
+ * the queue), 'securecapita.bcrypt.duration' (hash time, tagged by operation), 'securecapita.bcrypt.rejected' and
+ * 'securecapita.bcrypt.strength'.
+ */
+@Slf4j
+public class BoundedPasswordEncoder implements PasswordEncoder {
+    private static final String POOL_NAME = "bcrypt";
+    private static final long QUEUE_FULL_RETRY_DELAY_MILLISECONDS = 10;
+    private final PasswordEncoder passwordEncoder;
+    private final int strength;
+    private final ThreadPoolExecutor executor;
+    private final Timer waitTimer;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejectedCounter;
+
+    public BoundedPasswordEncoder(int strength, int poolSize, int queueCapacity, MeterRegistry meterRegistry) {
+        this.passwordEncoder = new BCryptPasswordEncoder(strength);
+        this.strength = strength;
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), getThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+        new ExecutorServiceMetrics(executor, POOL_NAME, Tags.empty()).bindTo(meterRegistry);
+        this.waitTimer = Timer.builder("securecapita.bcrypt.wait").publishPercentiles(0.5, 0.95, 0.99).register(meterRegistry);
+        this.encodeTimer = Timer.builder("securecapita.bcrypt.duration").tag("operation", "encode").register(meterRegistry);
+        this.matchesTimer = Timer.builder("securecapita.bcrypt.duration").tag("operation", "matches").register(meterRegistry);
+        this.rejectedCounter = Counter.builder("securecapita.bcrypt.rejected").register(meterRegistry);
+        Gauge.builder("securecapita.bcrypt.strength", () -> strength).register(meterRegistry);
+        log.info("Password encoder strength: {}, pool size: {}, queue capacity: {}", strength, poolSize, queueCapacity);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return execute(encodeTimer, () -> passwordEncoder.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return execute(matchesTimer, () -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    // Only hashes with a lower strength are replaced, instances started with different strengths never rehash back and forth
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        int encodedStrength = BCryptUtils.getStrength(encodedPassword);
+        return encodedStrength > 0 && encodedStrength < strength;
+    }
+
+    /**
+     * Hashes in the background for work that nobody waits on, like replacing an outdated hash.
+     * The returned future is completed exceptionally with a ServerBusyException when the queue is full.
+     */
+    public CompletableFuture<String> encodeAsync(CharSequence rawPassword) {
+        try {
+            return CompletableFuture.supplyAsync(() -> encodeTimer.record(() -> passwordEncoder.encode(rawPassword)), executor);
+        } catch (RejectedExecutionException exception) {
+            rejectedCounter.increment();
+            return CompletableFuture.failedFuture(new ServerBusyException("Password encoder queue is full."));
+        }
+    }
+
+    /**
+     * Hashes a list of passwords in parallel on the pool, for bulk work like importing users. At most pool size hashes
+     * are in flight at once, so the queue is left for logins; when logins fill it the remaining hashes wait for room.
+     */
+    public List<String> encodeAll(List<? extends CharSequence> rawPasswords) {
+        Semaphore permits = new Semaphore(executor.getCorePoolSize());
+        List<CompletableFuture<String>> hashes = new ArrayList<>(rawPasswords.size());
+        try {
+            for (CharSequence rawPassword : rawPasswords) {
+                permits.acquire();
+                CompletableFuture<String> hash = submitWhenQueued(rawPassword);
+                hash.whenComplete((encodedPassword, exception) -> permits.release());
+                hashes.add(hash);
+            }
+            return hashes.stream().map(CompletableFuture::join).toList();
+        } catch (InterruptedException exception) {
+            hashes.forEach(hash -> hash.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new ServerBusyException("The request was interrupted. Please try again.");
+        }
+    }
+
+    public int getStrength() {
+        return strength;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private CompletableFuture<String> submitWhenQueued(CharSequence rawPassword) throws InterruptedException {
+        while (true) {
+            try {
+                return CompletableFuture.supplyAsync(() -> encodeTimer.record(() -> passwordEncoder.encode(rawPassword)), executor);
+            } catch (RejectedExecutionException exception) {
+                TimeUnit.MILLISECONDS.sleep(QUEUE_FULL_RETRY_DELAY_MILLISECONDS);
+            }
+        }
+    }
+
+    private <T> T execute(Timer durationTimer, Callable<T> task) {
+        long submittedAt = System.nanoTime();
+        Future<T> future;
+        try {
+            future = executor.submit(() -> {
+                waitTimer.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                return durationTimer.recordCallable(task);
+            });
+        } catch (RejectedExecutionException exception) {
+            rejectedCounter.increment();
+            log.warn("Password encoder queue is full, rejecting the request.");
+            throw new ServerBusyException("The server is busy. Please try again in a moment.");
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new ServerBusyException("The request was interrupted. Please try again.");
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new IllegalStateException(exception.getCause());
+        }
+    }
+
+    private ThreadFactory getThreadFactory() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, POOL_NAME + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
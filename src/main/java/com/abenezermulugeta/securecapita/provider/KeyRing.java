@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.provider;
+
+import com.abenezermulugeta.securecapita.configuration.JwtKeyProperties;
+import com.abenezermulugeta.securecapita.enumeration.KeyStatus;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+
+/**
+ * Immutable set of the JWT keys. The algorithm of the active key and the verifiers of every key that isn't retired are
+ * built once, signing uses the active key and verifying looks the verifier up by the kid header of the token.
+ * Tokens without a kid header were issued before the key ids and are verified with the legacy 'jwt.secret'.
+ *
+ * Rotating a key: add the new key with the VERIFY status, make it ACTIVE and the previous one VERIFY once every instance
+ * knows it, and retire the previous one when the tokens it signed have expired (5 days, the refresh token lifetime).
+ */
+@Slf4j
+public class KeyRing {
+    public static final String DEFAULT_KEY_ID = "default";
+    // HMAC512 needs a key of at least the size of its hash to keep its strength
+    private static final int MINIMUM_SECRET_LENGTH = 64;
+    private final String activeKeyId;
+    private final Algorithm activeAlgorithm;
+    private final Map<String, JWTVerifier> verifiers;
+    private final JWTVerifier legacyVerifier;
+
+    private KeyRing(String activeKeyId, Algorithm activeAlgorithm, Map<String, JWTVerifier> verifiers, JWTVerifier legacyVerifier) {
+        this.activeKeyId = activeKeyId;
+        this.activeAlgorithm = activeAlgorithm;
+        this.verifiers = Map.copyOf(verifiers);
+        this.legacyVerifier = legacyVerifier;
+    }
+
+    /**
+     * Builds the key ring from the configured keys, the verifier factory adds the claims every token is checked for.
+     * Fails when there isn't exactly one active key.
+     */
+    public static KeyRing of(JwtKeyProperties properties, Function<Algorithm, JWTVerifier> verifierFactory) {
+        String legacySecret = properties.getSecret();
+        JWTVerifier legacyVerifier = StringUtils.isEmpty(legacySecret) ? null : verifierFactory.apply(getAlgorithm(legacySecret));
+        if (properties.getKeys().isEmpty()) {
+            if (legacyVerifier == null) throw new IllegalStateException("No JWT key configured, set jwt.keys or jwt.secret.");
+            log.info("JWT keys not configured, signing with jwt.secret as key id: {}", DEFAULT_KEY_ID);
+            return new KeyRing(DEFAULT_KEY_ID, getAlgorithm(legacySecret), Map.of(DEFAULT_KEY_ID, legacyVerifier), legacyVerifier);
+        }
+        String activeKeyId = null;
+        Algorithm activeAlgorithm = null;
+        Map<String, JWTVerifier> verifiers = new HashMap<>();
+        Set<String> keyIds = new HashSet<>();
+        for (JwtKeyProperties.Key key : properties.getKeys()) {
+            if (StringUtils.isAnyEmpty(key.getId(), key.getSecret())) throw new IllegalStateException("Every JWT key needs an id and a secret.");
+            if (!keyIds.add(key.getId())) throw new IllegalStateException("Duplicate JWT key id: " + key.getId());
+            if (key.getStatus() == KeyStatus.RETIRED) continue;
+            if (key.getSecret().getBytes(StandardCharsets.UTF_8).length < MINIMUM_SECRET_LENGTH) {
+                log.warn("JWT key {} is shorter than {} bytes", key.getId(), MINIMUM_SECRET_LENGTH);
+            }
+            Algorithm algorithm = getAlgorithm(key.getSecret());
+            verifiers.put(key.getId(), verifierFactory.apply(algorithm));
+            if (key.getStatus() == KeyStatus.ACTIVE) {
+                if (activeKeyId != null) throw new IllegalStateException("More than one active JWT key: " + activeKeyId + ", " + key.getId());
+                activeKeyId = key.getId();
+                activeAlgorithm = algorithm;
+            }
+        }
+        if (activeKeyId == null) throw new IllegalStateException("No active JWT key, one key of jwt.keys needs the ACTIVE status.");
+        log.info("JWT signing key: {}, verifying keys: {}, legacy key: {}", activeKeyId, verifiers.keySet(), legacyVerifier != null);
+        return new KeyRing(activeKeyId, activeAlgorithm, verifiers, legacyVerifier);
+    }
+
+    public String getActiveKeyId() {
+        return activeKeyId;
+    }
+
+    public Algorithm getActiveAlgorithm() {
+        return activeAlgorithm;
+    }
+
+    // The token is decoded once, its signature and claims are checked by the verifier of its key
+    public DecodedJWT verify(String token) {
+        DecodedJWT decodedJWT = JWT.decode(token);
+        String keyId = decodedJWT.getKeyId();
+        JWTVerifier verifier = keyId == null ? legacyVerifier : verifiers.get(keyId);
+        if (verifier == null) throw new JWTVerificationException("The token was signed with an unknown or retired key.");
+        return verifier.verify(decodedJWT);
+    }
+
+    private static Algorithm getAlgorithm(String secret) {
+        return HMAC512(secret.getBytes(StandardCharsets.UTF_8));
+    }
+}
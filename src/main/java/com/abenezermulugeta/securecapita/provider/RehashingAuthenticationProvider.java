@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.provider;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
+
+/**
+ * DaoAuthenticationProvider can upgrade outdated hashes itself, but it hashes the password again on the request thread.
+ * This provider replaces a hash with an outdated strength in the background after a successful login instead,
+ * so the whole user base converges to the configured strength without a migration and without slowing down the login.
+ */
+@Slf4j
+public class RehashingAuthenticationProvider extends DaoAuthenticationProvider {
+    private final BoundedPasswordEncoder passwordEncoder;
+    private final UserDetailsPasswordService userDetailsPasswordService;
+
+    public RehashingAuthenticationProvider(BoundedPasswordEncoder passwordEncoder, UserDetailsPasswordService userDetailsPasswordService) {
+        this.passwordEncoder = passwordEncoder;
+        this.userDetailsPasswordService = userDetailsPasswordService;
+    }
+
+    @Override
+    protected Authentication createSuccessAuthentication(Object principal, Authentication authentication, UserDetails user) {
+        if (passwordEncoder.upgradeEncoding(user.getPassword())) {
+            // The credentials are erased once the authentication is done, so the password is read now
+            String presentedPassword = authentication.getCredentials().toString();
+            passwordEncoder.encodeAsync(presentedPassword)
+                    .thenAccept(encodedPassword -> userDetailsPasswordService.updatePassword(user, encodedPassword))
+                    .exceptionally(exception -> {
+                        // The hash is replaced on a later login
+                        log.warn("Could not replace the password hash of {}: {}", user.getUsername(), exception.getMessage());
+                        return null;
+                    });
+        }
+        return super.createSuccessAuthentication(principal, authentication, user);
+    }
+}
@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.provider;
+
+import com.abenezermulugeta.securecapita.cache.VerifiedTokenCache;
+import com.abenezermulugeta.securecapita.domain.VerifiedToken;
+import com.abenezermulugeta.securecapita.dto.TokenIntrospectionDTO;
+import com.abenezermulugeta.securecapita.enumeration.TokenType;
+import com.abenezermulugeta.securecapita.exception.ApiException;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.exceptions.TokenExpiredException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifies batches of tokens for other services, so a gateway validates all the tokens it holds in one call.
+ * A batch is split into chunks verified in parallel on a small pool of its own, small batches are verified on the
+ * request thread. Tokens go through the same verified token cache and revocation check as the requests of the API.
+ * When the pool is busy the chunk runs on the request thread instead of waiting in the queue.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TokenIntrospector {
+    private static final String POOL_NAME = "token-introspection";
+    private final TokenProvider tokenProvider;
+    private final VerifiedTokenCache verifiedTokenCache;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.token-introspection.maximum-batch-size:100}")
+    private int maximumBatchSize;
+
+    // Verifying one token takes a few microseconds, fewer tokens per chunk cost more in hand offs than they save
+    @Value("${application.token-introspection.minimum-chunk-size:16}")
+    private int minimumChunkSize;
+
+    @Value("${application.token-introspection.pool-size:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}")
+    private int poolSize;
+
+    private ThreadPoolExecutor executor;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(poolSize * 4), runnable -> {
+            Thread thread = new Thread(runnable, POOL_NAME + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        new ExecutorServiceMetrics(executor, POOL_NAME, Tags.empty()).bindTo(meterRegistry);
+        log.info("Token introspection pool size: {}, maximum batch size: {}", poolSize, maximumBatchSize);
+    }
+
+    // The results are in the order of the tokens
+    public List<TokenIntrospectionDTO> introspect(List<String> tokens) {
+        if (tokens.size() > maximumBatchSize) throw new ApiException("At most " + maximumBatchSize + " tokens can be introspected at once.");
+        int chunks = Math.max(1, Math.min(poolSize, tokens.size() / minimumChunkSize));
+        if (chunks == 1) return tokens.stream().map(this::introspect).toList();
+        int chunkSize = (tokens.size() + chunks - 1) / chunks;
+        List<CompletableFuture<List<TokenIntrospectionDTO>>> futures = new ArrayList<>(chunks);
+        for (int from = 0; from < tokens.size(); from += chunkSize) {
+            List<String> chunk = tokens.subList(from, Math.min(from + chunkSize, tokens.size()));
+            futures.add(CompletableFuture.supplyAsync(() -> chunk.stream().map(this::introspect).toList(), executor));
+        }
+        List<TokenIntrospectionDTO> results = new ArrayList<>(tokens.size());
+        futures.forEach(future -> results.addAll(future.join()));
+        return results;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private TokenIntrospectionDTO introspect(String token) {
+        if (StringUtils.isBlank(token)) return inactive("Token is invalid.");
+        try {
+            VerifiedToken verifiedToken = verifiedTokenCache.get(token, tokenProvider::verifyToken);
+            if (verifiedToken.getType() != TokenType.ACCESS) return inactive("Token is not an access token.");
+            if (!tokenProvider.isAccessTokenValid(verifiedToken)) return inactive("Token is no longer valid.");
+            return TokenIntrospectionDTO.builder()
+                    .active(true)
+                    .subject(verifiedToken.getSubject())
+                    .userId(verifiedToken.getUserId())
+                    .role(verifiedToken.getRole())
+                    .authorities(verifiedToken.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList())
+                    .issuedAt(verifiedToken.getIssuedAt())
+                    .expiresAt(verifiedToken.getExpiresAt())
+                    .build();
+        } catch (TokenExpiredException exception) {
+            return inactive("Token is expired.");
+        } catch (JWTVerificationException exception) {
+            return inactive("Token is invalid.");
+        }
+    }
+
+    private TokenIntrospectionDTO inactive(String reason) {
+        return TokenIntrospectionDTO.builder().active(false).reason(reason).build();
+    }
+}
@@ -6,14 +6,23 @@
 
 package com.abenezermulugeta.securecapita.provider;
 
+import com.abenezermulugeta.securecapita.configuration.JwtKeyProperties;
 import com.abenezermulugeta.securecapita.domain.UserPrincipal;
+import com.abenezermulugeta.securecapita.domain.VerifiedToken;
+import com.abenezermulugeta.securecapita.dto.UserDTO;
+import com.abenezermulugeta.securecapita.dtomapper.UserDTOMapper;
+import com.abenezermulugeta.securecapita.enumeration.Permission;
+import com.abenezermulugeta.securecapita.enumeration.TokenType;
+import com.abenezermulugeta.securecapita.security.RefreshTokenStore;
+import com.abenezermulugeta.securecapita.security.TokenRevocationStore;
 import com.abenezermulugeta.securecapita.service.UserService;
 import com.auth0.jwt.JWT;
-import com.auth0.jwt.JWTVerifier;
-import com.auth0.jwt.algorithms.Algorithm;
+import com.auth0.jwt.JWTCreator;
 import com.auth0.jwt.exceptions.InvalidClaimException;
 import com.auth0.jwt.exceptions.JWTVerificationException;
 import com.auth0.jwt.exceptions.TokenExpiredException;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import jakarta.annotation.PostConstruct;
 import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -22,112 +31,220 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
-import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.UUID;
 
-import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
 import static java.lang.System.currentTimeMillis;
-import static java.util.Arrays.stream;
-import static java.util.stream.Collectors.toList;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class TokenProvider {
     private final UserService userService;
+    private final TokenRevocationStore tokenRevocationStore;
+    private final RefreshTokenStore refreshTokenStore;
+    private final JwtKeyProperties jwtKeyProperties;
     private static final String AUTHORITIES = "authorities";
+    // The compact encoding of the authorities, the Permission bits and the version of the Permission registry
+    private static final String PERMISSIONS = "perms";
+    private static final String PERMISSIONS_VERSION = "perms_v";
+    private static final String USER_ID = "user_id";
+    private static final String ROLE = "role";
+    // ACCESS or REFRESH, see TokenType
+    private static final String TOKEN_TYPE = "token_type";
+    // The refresh token family, see RefreshTokenStore
+    private static final String FAMILY = "fam";
     private static final String ISSUER_COMPANY = "ANI_TECH_LLC";
     private static final String AUDIENCE = "CUSTOMER_MANAGEMENT_SERVICE";
 
     // 1_800_800 is 30 minutes in milliseconds
-    private static final long JWT_ACCESS_TOKEN_EXPIRATION_TIME = 1_800_000;
+    public static final long JWT_ACCESS_TOKEN_EXPIRATION_TIME = 1_800_000;
 
     // 432_000_000 is 5 days in milliseconds
-    private static final long JWT_REFRESH_TOKEN_EXPIRATION_TIME = 432_000_000;
+    public static final long JWT_REFRESH_TOKEN_EXPIRATION_TIME = 432_000_000;
 
-    @Value("${jwt.secret}")
-    private String secret;
+    // When enabled, the authenticated principal is built from the signed token claims without querying the database
+    @Value("${jwt.stateless:false}")
+    private boolean stateless;
+
+    // When enabled, access tokens carry the permission bitmask instead of the authority names. Both are accepted either way
+    @Value("${jwt.compact-permissions:false}")
+    private boolean compactPermissions;
+
+    // The algorithms and verifiers of the keys are thread safe, they are built once and shared by every request
+    private KeyRing keyRing;
+
+    @PostConstruct
+    public void init() {
+        keyRing = KeyRing.of(jwtKeyProperties, algorithm -> JWT.require(algorithm).withIssuer(ISSUER_COMPANY).build());
+    }
 
     public String createAccessToken(UserPrincipal userPrincipal) {
-        return JWT.create()
+        UserDTO user = userPrincipal.getUser();
+        JWTCreator.Builder builder = JWT.create()
+                .withKeyId(keyRing.getActiveKeyId())
                 .withIssuer(ISSUER_COMPANY)
                 .withAudience(AUDIENCE)
                 .withIssuedAt(new Date())
+                .withJWTId(UUID.randomUUID().toString())
                 .withSubject(userPrincipal.getUsername())
-                .withArrayClaim(AUTHORITIES, getClaimsFromUserPrincipal(userPrincipal))
+                .withClaim(TOKEN_TYPE, TokenType.ACCESS.name())
+                .withClaim(USER_ID, user.getId())
+                .withClaim(ROLE, user.getRoleName());
+        if (compactPermissions) {
+            builder.withClaim(PERMISSIONS, userPrincipal.getPermissions()).withClaim(PERMISSIONS_VERSION, Permission.REGISTRY_VERSION);
+        } else {
+            builder.withArrayClaim(AUTHORITIES, getClaimsFromUserPrincipal(userPrincipal));
+        }
+        return builder
                 .withExpiresAt(new Date(currentTimeMillis() + JWT_ACCESS_TOKEN_EXPIRATION_TIME))
-                .sign(HMAC512(secret.getBytes()));
+                .sign(keyRing.getActiveAlgorithm());
     }
 
+    // Starts a new refresh token family, it is called on login
     public String createRefreshToken(UserPrincipal userPrincipal) {
+        String familyId = UUID.randomUUID().toString();
+        String tokenId = UUID.randomUUID().toString();
+        Date expiresAt = new Date(currentTimeMillis() + JWT_REFRESH_TOKEN_EXPIRATION_TIME);
+        refreshTokenStore.startFamily(familyId, userPrincipal.getUserId(), tokenId, expiresAt);
+        return signRefreshToken(userPrincipal, familyId, tokenId, expiresAt);
+    }
+
+    /**
+     * Exchanges a verified refresh token for the next one of its family, the presented token can't be used again.
+     * Returns null when the token isn't a refresh token or its family doesn't accept it anymore.
+     */
+    public String rotateRefreshToken(VerifiedToken refreshToken, UserPrincipal userPrincipal) {
+        if (refreshToken.getType() != TokenType.REFRESH) return null;
+        if (refreshToken.getFamilyId() == null) {
+            // Refresh tokens issued before the rotation are exchanged for a new family once: only the request that
+            // revokes the token gets one. Without a token id that can't be enforced, the user has to log in again
+            return tokenRevocationStore.revoke(refreshToken) ? createRefreshToken(userPrincipal) : null;
+        }
+        String tokenId = UUID.randomUUID().toString();
+        Date expiresAt = new Date(currentTimeMillis() + JWT_REFRESH_TOKEN_EXPIRATION_TIME);
+        return refreshTokenStore.rotate(refreshToken.getFamilyId(), refreshToken.getTokenId(), tokenId, expiresAt) ?
+                signRefreshToken(userPrincipal, refreshToken.getFamilyId(), tokenId, expiresAt) : null;
+    }
+
+    private String signRefreshToken(UserPrincipal userPrincipal, String familyId, String tokenId, Date expiresAt) {
         return JWT.create()
+                .withKeyId(keyRing.getActiveKeyId())
                 .withIssuer(ISSUER_COMPANY)
                 .withAudience(AUDIENCE)
                 .withIssuedAt(new Date())
+                .withJWTId(tokenId)
                 .withSubject(userPrincipal.getUsername())
-                .withExpiresAt(new Date(currentTimeMillis() + JWT_REFRESH_TOKEN_EXPIRATION_TIME))
-                .sign(HMAC512(secret.getBytes()));
+                .withClaim(TOKEN_TYPE, TokenType.REFRESH.name())
+                // The user id lets the refresh token be revoked together with the other tokens of the user
+                .withClaim(USER_ID, userPrincipal.getUserId())
+                .withClaim(FAMILY, familyId)
+                .withExpiresAt(expiresAt)
+                .sign(keyRing.getActiveAlgorithm());
     }
 
-    public String getSubject(String token, HttpServletRequest request) {
+    /**
+     * Verifies the signature and the registered claims of the token exactly once and returns everything
+     * the caller needs from it (subject, expiry and authorities), so the token never has to be decoded again.
+     */
+    public VerifiedToken verifyToken(String token, HttpServletRequest request) {
         try {
-            return getJWTVerifier().verify(token).getSubject();
+            return verifyToken(token);
         } catch (TokenExpiredException exception) {
             request.setAttribute("expirationMessage", exception.getMessage());
             throw exception;
         } catch (InvalidClaimException exception) {
             request.setAttribute("invalidClaim", exception.getMessage());
             throw exception;
-        } catch (Exception exception) {
-            throw exception;
         }
     }
 
-    public List<GrantedAuthority> getAuthorities(String token) {
-        String[] claims = getClaimsFromToken(token);
-        return stream(claims).map(SimpleGrantedAuthority::new).collect(toList());
+    // The verifiers are shared and thread safe, this can be called from any thread
+    public VerifiedToken verifyToken(String token) {
+        DecodedJWT decodedJWT = keyRing.verify(token);
+        return VerifiedToken.builder()
+                .token(token)
+                .type(getTokenType(decodedJWT))
+                .tokenId(decodedJWT.getId())
+                .subject(decodedJWT.getSubject())
+                .userId(decodedJWT.getClaim(USER_ID).asLong())
+                .role(decodedJWT.getClaim(ROLE).asString())
+                .familyId(decodedJWT.getClaim(FAMILY).asString())
+                .issuedAt(decodedJWT.getIssuedAt())
+                .expiresAt(decodedJWT.getExpiresAt())
+                .authorities(getAuthorities(decodedJWT))
+                .build();
     }
 
-    public Authentication getAuthentication(String email, List<GrantedAuthority> authorities, HttpServletRequest request) {
-        UsernamePasswordAuthenticationToken usernamePasswordAuthToken = new UsernamePasswordAuthenticationToken(userService.getUserByEmail(email), null, authorities);
+    public Authentication getAuthentication(VerifiedToken verifiedToken, HttpServletRequest request) {
+        UsernamePasswordAuthenticationToken usernamePasswordAuthToken = new UsernamePasswordAuthenticationToken(getPrincipal(verifiedToken), null, verifiedToken.getAuthorities());
         usernamePasswordAuthToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
         return usernamePasswordAuthToken;
     }
 
-    public boolean isTokenValid(String email, String token) {
-        JWTVerifier verifier = getJWTVerifier();
-        return StringUtils.isNotEmpty(email) && !isTokenExpired(verifier, token);
+    // Only access tokens authenticate requests, a refresh token sent as a bearer token is rejected
+    public boolean isAccessTokenValid(VerifiedToken verifiedToken) {
+        return isTokenValid(verifiedToken, TokenType.ACCESS);
+    }
+
+    public boolean isRefreshTokenValid(VerifiedToken verifiedToken) {
+        return isTokenValid(verifiedToken, TokenType.REFRESH);
     }
 
-    private boolean isTokenExpired(JWTVerifier verifier, String token) {
-        Date expiration = verifier.verify(token).getExpiresAt();
-        return expiration.before(new Date());
+    // The revocation check is answered from memory, see TokenRevocationStore
+    private boolean isTokenValid(VerifiedToken verifiedToken, TokenType tokenType) {
+        return verifiedToken.getType() == tokenType && StringUtils.isNotEmpty(verifiedToken.getSubject()) &&
+                !isTokenExpired(verifiedToken) && !tokenRevocationStore.isRevoked(verifiedToken);
+    }
+
+    private boolean isTokenExpired(VerifiedToken verifiedToken) {
+        return verifiedToken.getExpiresAt().before(new Date());
+    }
+
+    private UserDTO getPrincipal(VerifiedToken verifiedToken) {
+        // Tokens issued before the user id claim was added still have to be resolved from the database
+        return stateless && verifiedToken.getUserId() != null ?
+                UserDTOMapper.fromVerifiedToken(verifiedToken) : userService.getUserByEmail(verifiedToken.getSubject());
     }
 
     private String[] getClaimsFromUserPrincipal(UserPrincipal userPrincipal) {
         return userPrincipal.getAuthorities().stream().map(GrantedAuthority::getAuthority).toArray(String[]::new);
     }
 
-    private String[] getClaimsFromToken(String token) {
-        JWTVerifier verifier = getJWTVerifier();
-        return verifier.verify(token).getClaim(AUTHORITIES).asArray(String.class);
+    private List<GrantedAuthority> getAuthorities(DecodedJWT decodedJWT) {
+        Long permissions = decodedJWT.getClaim(PERMISSIONS).asLong();
+        if (permissions != null) {
+            Integer version = decodedJWT.getClaim(PERMISSIONS_VERSION).asInt();
+            if (version != null && version == Permission.REGISTRY_VERSION) return Permission.toAuthorities(permissions);
+            // The bits of another registry version can't be trusted, the token gets no authorities until it is refreshed
+            log.warn("Permission registry version {} of the token is not supported, expected {}", version, Permission.REGISTRY_VERSION);
+            return List.of();
+        }
+        // Tokens issued before the compact encoding carry the authority names, refresh tokens carry neither (they are
+        // rejected by isAccessTokenValid, so the empty list never authenticates anything)
+        String[] claims = decodedJWT.getClaim(AUTHORITIES).asArray(String.class);
+        return claims == null ? List.of() : Permission.toAuthorities(Permission.toBits(Arrays.asList(claims)));
     }
 
-    private JWTVerifier getJWTVerifier() {
-        JWTVerifier verifier;
-
+    /**
+     * Tokens issued before the token_type claim are told apart by their claims: access tokens always carried the role
+     * or the authorities, refresh tokens never did.
+     */
+    private TokenType getTokenType(DecodedJWT decodedJWT) {
+        String tokenType = decodedJWT.getClaim(TOKEN_TYPE).asString();
+        if (tokenType == null) {
+            boolean access = !decodedJWT.getClaim(ROLE).isMissing() || !decodedJWT.getClaim(AUTHORITIES).isMissing() || !decodedJWT.getClaim(PERMISSIONS).isMissing();
+            return access ? TokenType.ACCESS : TokenType.REFRESH;
+        }
         try {
-            Algorithm algorithm = HMAC512(secret);
-            verifier = JWT.require(algorithm).withIssuer(ISSUER_COMPANY).build();
-        } catch (JWTVerificationException exception) {
-            log.error(exception.getMessage());
-            throw new JWTVerificationException("Token cannot be verified.");
+            return TokenType.valueOf(tokenType);
+        } catch (IllegalArgumentException exception) {
+            throw new JWTVerificationException("The token type is not valid.");
         }
-
-        return verifier;
     }
 }
@@ -0,0 +1,16 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.query;
+
+public class EmailQuery {
+    public static final String INSERT_EMAIL_QUERY = "INSERT INTO EmailOutbox (recipient, first_name, type, url, status, next_attempt_at) VALUES (:recipient, :firstName, :type, :url, 'PENDING', :now)";
+    // SKIP LOCKED lets several instances claim different messages at the same time, it is served by the (status, next_attempt_at) index
+    public static final String SELECT_DUE_EMAILS_QUERY = "SELECT id, recipient, first_name, type, url, attempts FROM EmailOutbox WHERE status IN ('PENDING', 'SENDING') AND next_attempt_at <= :now ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED";
+    public static final String CLAIM_EMAILS_QUERY = "UPDATE EmailOutbox SET status = 'SENDING', next_attempt_at = :leaseUntil WHERE id IN (:ids)";
+    public static final String DELETE_EMAILS_QUERY = "DELETE FROM EmailOutbox WHERE id IN (:ids)";
+    public static final String UPDATE_FAILED_EMAIL_QUERY = "UPDATE EmailOutbox SET status = :status, attempts = :attempts, next_attempt_at = :nextAttemptAt, last_error = :lastError WHERE id = :id";
+}
@@ -0,0 +1,17 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.query;
+
+public class EventQuery {
+    public static final String SELECT_EVENTS_QUERY = "SELECT id, type, description FROM Events";
+    // Keyset pagination, newest first, both queries are served by the (user_id, created_at, id) index without a filesort
+    public static final String SELECT_USER_EVENTS_QUERY = "SELECT id, event_id, device, ip_address, created_at FROM UserEvents WHERE user_id = :userId ORDER BY created_at DESC, id DESC LIMIT :limit";
+    public static final String SELECT_USER_EVENTS_BEFORE_QUERY = "SELECT id, event_id, device, ip_address, created_at FROM UserEvents WHERE user_id = :userId AND (created_at < :createdAt OR (created_at = :createdAt AND id < :id)) ORDER BY created_at DESC, id DESC LIMIT :limit";
+    // The user and the event ids are resolved by the insert itself, no row is inserted for an unknown email
+    public static final String INSERT_USER_EVENT_BY_USER_ID_QUERY = "INSERT INTO UserEvents (user_id, event_id, device, ip_address, created_at) SELECT :userId, e.id, :device, :ipAddress, :createdAt FROM Events e WHERE e.type = :type";
+    public static final String INSERT_USER_EVENT_BY_EMAIL_QUERY = "INSERT INTO UserEvents (user_id, event_id, device, ip_address, created_at) SELECT u.id, e.id, :device, :ipAddress, :createdAt FROM Users u, Events e WHERE u.email = :email AND e.type = :type";
+}
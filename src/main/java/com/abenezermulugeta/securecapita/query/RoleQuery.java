@@ -7,7 +7,13 @@
 package com.abenezermulugeta.securecapita.query;
 
 public class RoleQuery {
+    // Roles are read all at once by the RoleCatalog, the queries below only need role ids
+    public static final String SELECT_ROLES_QUERY = "SELECT id, name, permission FROM Roles";
+    public static final String INSERT_ROLE_QUERY = "INSERT INTO Roles (name, permission) VALUES (:name, :permission)";
+    public static final String UPDATE_ROLE_QUERY = "UPDATE Roles SET name = :name, permission = :permission WHERE id = :id";
+    public static final String DELETE_ROLE_QUERY = "DELETE FROM Roles WHERE id = :id";
     public static final String INSERT_ROLE_TO_USER_QUERY = "INSERT INTO UserRoles (user_id, role_id) VALUES (:userId, :roleId)";
-    public static final String SELECT_ROLE_BY_NAME_QUERY = "SELECT * FROM Roles WHERE name = :name";
-    public static final String SELECT_ROLE_BY_ID_QUERY = "SELECT r.id, r.name, r.permission FROM Roles r JOIN UserRoles ur ON ur.role_id = r.id JOIN Users u ON u.id = ur.user_id WHERE u.id = :id";
+    public static final String UPDATE_USER_ROLE_QUERY = "UPDATE UserRoles SET role_id = :roleId WHERE user_id = :userId";
+    public static final String SELECT_ROLE_ID_BY_USER_ID_QUERY = "SELECT role_id FROM UserRoles WHERE user_id = :userId";
+    public static final String SELECT_ROLE_ID_BY_USER_EMAIL_QUERY = "SELECT ur.role_id FROM UserRoles ur JOIN Users u ON u.id = ur.user_id WHERE u.email = :email";
 }
@@ -0,0 +1,18 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.query;
+
+public class SmsQuery {
+    public static final String INSERT_SMS_QUERY = "INSERT INTO SmsOutbox (phone, body, status, next_attempt_at) VALUES (:phone, :body, 'PENDING', :now)";
+    // SKIP LOCKED lets several instances claim different messages at the same time, it is served by the (status, next_attempt_at) index
+    public static final String SELECT_DUE_SMS_QUERY = "SELECT id, phone, body, attempts FROM SmsOutbox WHERE status IN ('PENDING', 'SENDING') AND next_attempt_at <= :now ORDER BY next_attempt_at LIMIT :limit FOR UPDATE SKIP LOCKED";
+    public static final String CLAIM_SMS_QUERY = "UPDATE SmsOutbox SET status = 'SENDING', next_attempt_at = :leaseUntil WHERE id IN (:ids)";
+    public static final String DELETE_SMS_QUERY = "DELETE FROM SmsOutbox WHERE id = :id";
+    public static final String UPDATE_FAILED_SMS_QUERY = "UPDATE SmsOutbox SET status = :status, attempts = :attempts, next_attempt_at = :nextAttemptAt, last_error = :lastError WHERE id = :id";
+    // A message that is given up keeps its row for the diagnosis, but not the verification code in its body
+    public static final String GIVE_UP_SMS_QUERY = "UPDATE SmsOutbox SET status = 'FAILED', body = '', attempts = :attempts, last_error = :lastError WHERE id = :id";
+}
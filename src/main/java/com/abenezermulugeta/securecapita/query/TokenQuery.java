@@ -0,0 +1,27 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.query;
+
+public class TokenQuery {
+    // A token that is revoked twice keeps its first row
+    public static final String INSERT_REVOKED_TOKEN_QUERY = "INSERT IGNORE INTO RevokedTokens (token_id, user_id, expires_at) VALUES (:tokenId, :userId, :expiresAt)";
+    // Served by the created_at index, the window starts before the latest row loaded (see TokenRevocationStore.sync)
+    public static final String SELECT_REVOKED_TOKENS_QUERY = "SELECT token_id, expires_at, created_at FROM RevokedTokens WHERE created_at >= :createdFrom AND expires_at > :now";
+    public static final String DELETE_EXPIRED_REVOKED_TOKENS_QUERY = "DELETE FROM RevokedTokens WHERE expires_at <= :now";
+    // Only ever moves forward, so a revocation is never undone by an older one
+    public static final String UPSERT_USER_TOKEN_REVOCATION_QUERY = "INSERT INTO UserTokenRevocations (user_id, revoked_before, expires_at) VALUES (:userId, :revokedBefore, :expiresAt) " +
+            "ON DUPLICATE KEY UPDATE revoked_before = GREATEST(revoked_before, VALUES(revoked_before)), expires_at = GREATEST(expires_at, VALUES(expires_at))";
+    // Served by the updated_at index, like the revoked tokens the window starts before the latest row loaded
+    public static final String SELECT_USER_TOKEN_REVOCATIONS_QUERY = "SELECT user_id, revoked_before, updated_at FROM UserTokenRevocations WHERE updated_at >= :updatedFrom AND expires_at > :now";
+    public static final String DELETE_EXPIRED_USER_TOKEN_REVOCATIONS_QUERY = "DELETE FROM UserTokenRevocations WHERE expires_at <= :now";
+    public static final String INSERT_REFRESH_TOKEN_FAMILY_QUERY = "INSERT INTO RefreshTokenFamilies (family_id, user_id, token_id, expires_at) VALUES (:familyId, :userId, :tokenId, :expiresAt)";
+    // Compare and set on the primary key, only the current token of a live family is rotated
+    public static final String ROTATE_REFRESH_TOKEN_QUERY = "UPDATE RefreshTokenFamilies SET token_id = :newTokenId, expires_at = :expiresAt WHERE family_id = :familyId AND token_id = :tokenId AND revoked = FALSE AND expires_at > :now";
+    public static final String SELECT_REFRESH_TOKEN_FAMILY_QUERY = "SELECT token_id, revoked FROM RefreshTokenFamilies WHERE family_id = :familyId AND expires_at > :now";
+    public static final String REVOKE_REFRESH_TOKEN_FAMILY_QUERY = "UPDATE RefreshTokenFamilies SET revoked = TRUE WHERE family_id = :familyId";
+    public static final String DELETE_EXPIRED_REFRESH_TOKEN_FAMILIES_QUERY = "DELETE FROM RefreshTokenFamilies WHERE expires_at <= :now";
+}
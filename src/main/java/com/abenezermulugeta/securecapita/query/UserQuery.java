@@ -7,19 +7,47 @@
 package com.abenezermulugeta.securecapita.query;
 
 public class UserQuery {
+    // Users with the id of their role in one statement (mapped by UserPrincipalRowMapper, the role comes from the RoleCatalog), the password is only selected for authentication
+    private static final String USER_PRINCIPAL_COLUMNS = "u.id, u.first_name, u.last_name, u.email, u.address, u.phone, u.title, u.bio, u.image_url, u.enabled, u.non_locked, u.using_mfa, u.created_at, ur.role_id";
+    private static final String SELECT_USER_PRINCIPAL = "SELECT " + USER_PRINCIPAL_COLUMNS + " FROM Users u JOIN UserRoles ur ON ur.user_id = u.id";
+    private static final String SELECT_USER_PRINCIPAL_WITH_PASSWORD = "SELECT u.password, " + USER_PRINCIPAL_COLUMNS + " FROM Users u JOIN UserRoles ur ON ur.user_id = u.id";
+
     // Users Queries
     public static final String INSERT_USER_QUERY = "INSERT INTO Users (first_name, last_name, email, password) VALUES (:firstName, :lastName, :email, :password) ";
     public static final String COUNT_USER_EMAIL_QUERY = "SELECT COUNT(*) FROM Users WHERE email = :email";
-    public static final String SELECT_USER_BY_EMAIL_QUERY = "SELECT * FROM Users WHERE email = :email";
+    public static final String SELECT_EXISTING_EMAILS_QUERY = "SELECT email FROM Users WHERE email IN (:emails)";
+    public static final String SELECT_USER_IDS_BY_EMAILS_QUERY = "SELECT id, email FROM Users WHERE email IN (:emails)";
+    public static final String SELECT_USER_ID_BY_EMAIL_QUERY = "SELECT id FROM Users WHERE email = :email";
+    // Authentication reads the user with the password from the database, the user cache holds neither passwords nor lock state that decides access
+    public static final String SELECT_USER_PRINCIPAL_WITH_PASSWORD_BY_EMAIL_QUERY = SELECT_USER_PRINCIPAL_WITH_PASSWORD + " WHERE u.email = :email";
+    // Profile lookups (the user cache, the refresh of tokens, the principal of tokens without a user id) never select the password
+    public static final String SELECT_USER_PRINCIPAL_BY_EMAIL_QUERY = SELECT_USER_PRINCIPAL + " WHERE u.email = :email";
+    public static final String SELECT_USER_PRINCIPAL_BY_ID_QUERY = SELECT_USER_PRINCIPAL + " WHERE u.id = :id";
+    // Compare and set, a password reset that committed since the old hash was read is not overwritten
+    public static final String UPDATE_USER_PASSWORD_QUERY = "UPDATE Users SET password = :password WHERE id = :userId AND password = :oldPassword";
+    // The BCrypt strength is stored in the hash itself, like $2a$12$...
+    public static final String COUNT_USERS_BY_PASSWORD_STRENGTH_QUERY = "SELECT SUBSTRING(password, 5, 2) AS strength, COUNT(*) AS users FROM Users WHERE password LIKE '$2%' GROUP BY strength ORDER BY strength";
+    public static final String LOCK_USER_QUERY = "UPDATE Users SET non_locked = FALSE, locked_until = :lockedUntil WHERE email = :email";
+    // Users locked without an end date (locked_until is NULL) are not unlocked automatically
+    public static final String SELECT_USER_IDS_TO_UNLOCK_QUERY = "SELECT id FROM Users WHERE non_locked = FALSE AND locked_until <= NOW()";
+    public static final String UNLOCK_USERS_QUERY = "UPDATE Users SET non_locked = TRUE, locked_until = NULL WHERE id IN (:ids)";
+    // Keyset pagination over the primary key, a filter left NULL matches every user
+    public static final String SELECT_USERS_AFTER_ID_QUERY = "SELECT u.id, u.first_name, u.last_name, u.email, u.image_url, u.enabled, u.non_locked, u.using_mfa, u.created_at, ur.role_id FROM Users u JOIN UserRoles ur ON ur.user_id = u.id WHERE u.id > :afterId AND (:enabled IS NULL OR u.enabled = :enabled) AND (:notLocked IS NULL OR u.non_locked = :notLocked) AND (:usingMfa IS NULL OR u.using_mfa = :usingMfa) ORDER BY u.id LIMIT :limit";
+    // The columns of UserRowMapper without the password, read as a stream in id order
+    public static final String SELECT_USERS_FOR_EXPORT_QUERY = "SELECT id, first_name, last_name, email, address, phone, title, bio, image_url, enabled, non_locked, using_mfa, created_at FROM Users ORDER BY id";
+    // A NULL value keeps the stored one, so only the values sent in the request are changed
+    public static final String UPDATE_USER_QUERY = "UPDATE Users SET first_name = COALESCE(:firstName, first_name), last_name = COALESCE(:lastName, last_name), address = COALESCE(:address, address), " +
+            "phone = COALESCE(:phone, phone), title = COALESCE(:title, title), bio = COALESCE(:bio, bio) WHERE id = :id";
+    public static final String DELETE_USER_QUERY = "DELETE FROM Users WHERE id = :id";
     public static final String UPDATE_USER_ENABLED_QUERY = "UPDATE Users SET enabled = :enabled WHERE id = :userId";
 
     // TwoFactorVerifications Queries
     public static final String INSERT_VERIFICATION_CODE_QUERY = "INSERT INTO TwoFactorVerifications (user_id, code, expiration_date) VALUES (:userId, :verificationCode, :expirationDate)";
-    // This query selects a result by filtering the result of a sub query
-    public static final String SELECT_USER_BY_CODE_QUERY = "SELECT * FROM Users WHERE id = (SELECT user_id FROM TwoFactorVerifications WHERE code = :code)";
-    public static final String SELECT_CODE_EXPIRATION_QUERY = "SELECT expiration_date < NOW() AS is_expired FROM TwoFactorVerifications WHERE code = :code";
+    // The code of the user with the user, the code row is locked until the transaction ends so it can only be consumed once
+    public static final String SELECT_USER_BY_EMAIL_AND_CODE_FOR_UPDATE_QUERY = "SELECT tv.id AS verification_id, tv.expiration_date < NOW() AS is_expired, " + USER_PRINCIPAL_COLUMNS +
+            " FROM TwoFactorVerifications tv JOIN Users u ON u.id = tv.user_id JOIN UserRoles ur ON ur.user_id = u.id WHERE tv.code = :code AND u.email = :email FOR UPDATE OF tv";
     public static final String DELETE_VERIFICATION_CODE_BY_USER_ID_QUERY = "DELETE FROM TwoFactorVerifications WHERE user_id = :id";
-    public static final String DELETE_CODE = "DELETE FROM TwoFactorVerifications WHERE code = :code";
+    public static final String DELETE_VERIFICATION_CODE_BY_ID_QUERY = "DELETE FROM TwoFactorVerifications WHERE id = :id";
 
     // ResetPasswordVerification Queries
     public static final String INSERT_PASSWORD_VERIFICATION_QUERY = "INSERT INTO ResetPasswordVerifications (user_id, url, expiration_date) VALUES (:userId, :url, :expirationDate)";
@@ -27,11 +55,12 @@ public class UserQuery {
     public static final String SELECT_EXPIRATION_BY_URL_QUERY = "SELECT expiration_date < NOW() AS is_expired FROM ResetPasswordVerifications WHERE url = :url";
 
     // This query selects a result by filtering the result of a sub query
-    public static final String SELECT_USER_BY_PASSWORD_URL_QUERY = "SELECT * FROM Users WHERE id = (SELECT user_id FROM ResetPasswordVerifications WHERE url = :url)";
+    public static final String SELECT_USER_ID_BY_PASSWORD_URL_QUERY = "SELECT user_id FROM ResetPasswordVerifications WHERE url = :url";
+    public static final String SELECT_USER_BY_PASSWORD_URL_QUERY = SELECT_USER_PRINCIPAL + " WHERE u.id = (SELECT user_id FROM ResetPasswordVerifications WHERE url = :url)";
     public static final String UPDATE_PASSWORD_BY_URL_QUERY = "UPDATE Users SET password = :password WHERE id = (SELECT user_id FROM ResetPasswordVerifications WHERE url = :url)";
     public static final String DELETE_VERIFICATION_BY_URL_QUERY = "DELETE FROM ResetPasswordVerifications WHERE url = :url";
 
     // AccountVerifications Queries
     public static final String INSERT_ACCOUNT_VERIFICATION_URL_QUERY = "INSERT INTO AccountVerifications (user_id, url) VALUES (:userId, :url)";
-    public static final String SELECT_USER_BY_ACCOUNT_URL_QUERY = "SELECT * FROM Users WHERE id = (SELECT user_id FROM AccountVerifications WHERE url = :url)";
+    public static final String SELECT_USER_BY_ACCOUNT_URL_QUERY = SELECT_USER_PRINCIPAL + " WHERE u.id = (SELECT user_id FROM AccountVerifications WHERE url = :url)";
 }
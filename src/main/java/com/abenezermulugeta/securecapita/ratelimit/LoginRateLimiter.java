@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.ratelimit;
+
+import com.abenezermulugeta.securecapita.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Limits login attempts by client IP and by email before any database lookup or BCrypt work is done,
+ * and counts failed logins by email so that the account can be locked after too many of them.
+ * Rejected attempts are counted in the 'securecapita.login.rejected' metric, tagged by key.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LoginRateLimiter {
+    private static final int STRIPES = 64;
+    private static final int MAXIMUM_KEYS_PER_STRIPE = 2_048;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.login-rate-limit.ip.capacity:20}")
+    private int ipCapacity;
+
+    @Value("${application.login-rate-limit.ip.refill-period:1m}")
+    private Duration ipRefillPeriod;
+
+    @Value("${application.login-rate-limit.email.capacity:5}")
+    private int emailCapacity;
+
+    @Value("${application.login-rate-limit.email.refill-period:1m}")
+    private Duration emailRefillPeriod;
+
+    @Value("${application.login-rate-limit.maximum-failures:5}")
+    private int maximumFailures;
+
+    @Value("${application.login-rate-limit.lock-duration:15m}")
+    private Duration lockDuration;
+
+    private StripedRateLimiter ipLimiter;
+    private StripedRateLimiter emailLimiter;
+    private StripedRateLimiter failureLimiter;
+    private Counter ipRejectedCounter;
+    private Counter emailRejectedCounter;
+
+    @PostConstruct
+    public void init() {
+        ipLimiter = new StripedRateLimiter(ipCapacity, ipRefillPeriod, STRIPES, MAXIMUM_KEYS_PER_STRIPE);
+        emailLimiter = new StripedRateLimiter(emailCapacity, emailRefillPeriod, STRIPES, MAXIMUM_KEYS_PER_STRIPE);
+        // A failure takes a token, so the bucket is empty after 'maximumFailures' failures within the lock duration
+        failureLimiter = new StripedRateLimiter(maximumFailures, lockDuration, STRIPES, MAXIMUM_KEYS_PER_STRIPE);
+        ipRejectedCounter = Counter.builder("securecapita.login.rejected").tag("key", "ip").register(meterRegistry);
+        emailRejectedCounter = Counter.builder("securecapita.login.rejected").tag("key", "email").register(meterRegistry);
+    }
+
+    public void checkLoginAllowed(String ipAddress, String email) {
+        if (!ipLimiter.tryAcquire(ipAddress)) {
+            ipRejectedCounter.increment();
+            throw new TooManyRequestsException("Too many login attempts. Please try again later.");
+        }
+        if (!emailLimiter.tryAcquire(normalize(email))) {
+            emailRejectedCounter.increment();
+            throw new TooManyRequestsException("Too many login attempts. Please try again later.");
+        }
+    }
+
+    // Returns true when the failure is one too many and the account has to be locked
+    public boolean loginFailed(String email) {
+        return !failureLimiter.tryAcquire(normalize(email));
+    }
+
+    public void loginSucceeded(String email) {
+        failureLimiter.reset(normalize(email));
+    }
+
+    public Duration getLockDuration() {
+        return lockDuration;
+    }
+
+    private String normalize(String email) {
+        return email.trim().toLowerCase();
+    }
+}
@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.ratelimit;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Token bucket rate limiter keyed by a string (like an IP address or an email).
+ * Every key has a bucket of 'capacity' tokens that refills completely over 'refillPeriod'. The keys are spread over
+ * a fixed number of stripes, each with its own lock and its own LRU bounded map of buckets, so concurrent requests only
+ * contend when they land on the same stripe and a flood of unique keys cannot grow the heap.
+ */
+public class StripedRateLimiter {
+    private final int capacity;
+    private final double tokensPerNano;
+    private final Stripe[] stripes;
+
+    public StripedRateLimiter(int capacity, Duration refillPeriod, int stripeCount, int maximumKeysPerStripe) {
+        this.capacity = capacity;
+        this.tokensPerNano = (double) capacity / refillPeriod.toNanos();
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) stripes[i] = new Stripe(maximumKeysPerStripe);
+    }
+
+    // Takes one token from the bucket of the key, returns false when the bucket is empty
+    public boolean tryAcquire(String key) {
+        Stripe stripe = getStripe(key);
+        long now = System.nanoTime();
+        synchronized (stripe) {
+            Bucket bucket = stripe.get(key);
+            if (bucket == null) {
+                bucket = new Bucket(capacity, now);
+                stripe.put(key, bucket);
+            }
+            bucket.tokens = Math.min(capacity, bucket.tokens + (now - bucket.refilledAt) * tokensPerNano);
+            bucket.refilledAt = now;
+            if (bucket.tokens < 1) return false;
+            bucket.tokens--;
+            return true;
+        }
+    }
+
+    public void reset(String key) {
+        Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+    private Stripe getStripe(String key) {
+        int hash = key.hashCode();
+        // Spreads the high bits so that similar keys don't end up on the same stripe
+        return stripes[((hash ^ (hash >>> 16)) & 0x7fffffff) % stripes.length];
+    }
+
+    private static class Bucket {
+        private double tokens;
+        private long refilledAt;
+
+        private Bucket(double tokens, long refilledAt) {
+            this.tokens = tokens;
+            this.refilledAt = refilledAt;
+        }
+    }
+
+    // Access ordered, so the least recently used bucket is dropped once the stripe is full
+    private static class Stripe extends LinkedHashMap<String, Bucket> {
+        private final int maximumKeys;
+
+        private Stripe(int maximumKeys) {
+            super(16, 0.75f, true);
+            this.maximumKeys = maximumKeys;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+            return size() > maximumKeys;
+        }
+    }
+}
@@ -0,0 +1,17 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.repository;
+
+import com.abenezermulugeta.securecapita.dto.UserEventDTO;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface EventRepository {
+    // Returns up to 'limit' events of the user older than the given created at and id, newest first (null for the first page)
+    List<UserEventDTO> getUserEvents(Long userId, LocalDateTime createdAt, Long id, int limit);
+}
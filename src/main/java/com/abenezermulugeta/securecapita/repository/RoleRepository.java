@@ -19,6 +19,7 @@ public interface RoleRepository<T extends Role> {
 
     /* Complex Operations */
     void addRoleToUser(Long userId, String roleName);
+    Long getRoleIdByName(String roleName);
     Role getRoleByUserId(Long userId);
     Role getRoleByUserEmail(String email);
     void updateUserRole(Long userId, String roleName);
@@ -7,26 +7,45 @@
 package com.abenezermulugeta.securecapita.repository;
 
 import com.abenezermulugeta.securecapita.domain.User;
+import com.abenezermulugeta.securecapita.domain.UserPrincipal;
+import com.abenezermulugeta.securecapita.dto.ImportReport;
 import com.abenezermulugeta.securecapita.dto.UserDTO;
+import com.abenezermulugeta.securecapita.dto.UserSummaryDTO;
 
-import java.util.Collection;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 public interface UserRepository<T extends User> {
     /* Basic CRUD Operations */
     T create(T data);
-    Collection<T> list(int page, int pageSize);
+    List<UserSummaryDTO> list(Long afterId, int pageSize, Boolean enabled, Boolean notLocked, Boolean usingMfa);
     T get(Long id);
     T update(T data);
     Boolean delete(Long id);
     /* Complex Operations */
-    User getUserByEmail(String email);
+    UserPrincipal getUserPrincipalByEmail(String email);
+    UserPrincipal getUserPrincipalById(Long id);
+    UserPrincipal getUncachedUserPrincipalByEmail(String email);
     void sendVerificationCode(UserDTO userDto);
-    User verifyCode(String email, String code);
+    UserPrincipal verifyCode(String email, String code);
     void sendPasswordResetLink(String email);
 
-    User verifyPasswordKey(String key);
+    UserPrincipal verifyPasswordKey(String key);
 
     void resetPassword(String key, String password, String confirmPassword);
 
-    User verifyAccountKey(String key);
+    UserPrincipal verifyAccountKey(String key);
+
+    Map<String, Long> countUsersByPasswordStrength();
+
+    ImportReport importUsers(List<T> users);
+
+    void exportUsers(RowCallbackHandler rowCallbackHandler);
+
+    void lockUser(String email, Date lockedUntil);
+
+    void unlockExpiredUsers();
 }
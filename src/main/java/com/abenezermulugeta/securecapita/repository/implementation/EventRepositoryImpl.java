@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.repository.implementation;
+
+import com.abenezermulugeta.securecapita.cache.EventCatalog;
+import com.abenezermulugeta.securecapita.domain.Event;
+import com.abenezermulugeta.securecapita.dto.UserEventDTO;
+import com.abenezermulugeta.securecapita.exception.ApiException;
+import com.abenezermulugeta.securecapita.repository.EventRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static com.abenezermulugeta.securecapita.query.EventQuery.SELECT_USER_EVENTS_BEFORE_QUERY;
+import static com.abenezermulugeta.securecapita.query.EventQuery.SELECT_USER_EVENTS_QUERY;
+import static java.util.Map.of;
+
+@Repository
+@RequiredArgsConstructor
+@Slf4j
+public class EventRepositoryImpl implements EventRepository {
+    private final NamedParameterJdbcTemplate jdbc;
+    private final EventCatalog eventCatalog;
+
+    @Override
+    public List<UserEventDTO> getUserEvents(Long userId, LocalDateTime createdAt, Long id, int limit) {
+        try {
+            return createdAt == null
+                    ? jdbc.query(SELECT_USER_EVENTS_QUERY, of("userId", userId, "limit", limit), getUserEventRowMapper())
+                    : jdbc.query(SELECT_USER_EVENTS_BEFORE_QUERY, of("userId", userId, "createdAt", createdAt, "id", id, "limit", limit), getUserEventRowMapper());
+        } catch (Exception exception) {
+            log.error(exception.getMessage());
+            throw new ApiException("An error occurred. Please try again.");
+        }
+    }
+
+    private RowMapper<UserEventDTO> getUserEventRowMapper() {
+        return (resultSet, rowNum) -> {
+            Event event = eventCatalog.getById(resultSet.getLong("event_id"));
+            return UserEventDTO.builder()
+                    .id(resultSet.getLong("id"))
+                    .type(event == null ? null : event.getType())
+                    .description(event == null ? null : event.getDescription())
+                    .device(resultSet.getString("device"))
+                    .ipAddress(resultSet.getString("ip_address"))
+                    .createdAt(resultSet.getTimestamp("created_at").toLocalDateTime())
+                    .build();
+        };
+    }
+}
@@ -6,77 +6,136 @@
 
 package com.abenezermulugeta.securecapita.repository.implementation;
 
+import com.abenezermulugeta.securecapita.cache.RoleCatalog;
+import com.abenezermulugeta.securecapita.cache.UserCache;
 import com.abenezermulugeta.securecapita.domain.Role;
 import com.abenezermulugeta.securecapita.exception.ApiException;
 import com.abenezermulugeta.securecapita.repository.RoleRepository;
-import com.abenezermulugeta.securecapita.rowmapper.RoleRowMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
 
 import java.util.Collection;
-import java.util.Map;
+import java.util.List;
 
-import static com.abenezermulugeta.securecapita.enumeration.RoleType.ROLE_USER;
 import static com.abenezermulugeta.securecapita.query.RoleQuery.*;
 import static java.util.Map.*;
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Roles are read from the RoleCatalog, only the writes and the role ids of users go to the database.
+ * Every write to Roles reloads the catalog and evicts the cached users, which hold a copy of their role.
+ */
 @Repository
 @RequiredArgsConstructor
 @Slf4j
 public class RoleRepositoryImpl implements RoleRepository<Role> {
     private final NamedParameterJdbcTemplate jdbc;
+    private final UserCache userCache;
+    private final RoleCatalog roleCatalog;
 
     @Override
-    public Role create(Role data) {
-        return null;
+    public Role create(Role role) {
+        log.info("Creating role {}", role.getName());
+        try {
+            KeyHolder holder = new GeneratedKeyHolder();
+            jdbc.update(INSERT_ROLE_QUERY, new MapSqlParameterSource().addValue("name", role.getName()).addValue("permission", role.getPermission()), holder);
+            roleCatalog.reload();
+            return get(requireNonNull(holder.getKey()).longValue());
+        } catch (DuplicateKeyException exception) {
+            throw new ApiException("Role name already in use: " + role.getName());
+        } catch (ApiException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            log.error(exception.getMessage());
+            throw new ApiException("An error occurred. Please try again.");
+        }
     }
 
+    // The roles table only holds a handful of rows, so the page is taken from the catalog
     @Override
     public Collection<Role> list(int page, int pageSize) {
-        return null;
+        List<Role> roles = roleCatalog.getAll();
+        int from = Math.min(Math.max(page, 0) * pageSize, roles.size());
+        return roles.subList(from, Math.min(from + pageSize, roles.size()));
     }
 
     @Override
     public Role get(Long id) {
-        return null;
+        Role role = roleCatalog.getById(id);
+        if (role == null) throw new ApiException("No role found by id: " + id);
+        return role;
     }
 
     @Override
-    public Role update(Role data) {
-        return null;
+    public Role update(Role role) {
+        log.info("Updating role id: {}", role.getId());
+        try {
+            int updated = jdbc.update(UPDATE_ROLE_QUERY, of("id", role.getId(), "name", role.getName(), "permission", role.getPermission()));
+            if (updated == 0) throw new ApiException("No role found by id: " + role.getId());
+            roleCatalog.reload();
+            userCache.evictAll();
+            return get(role.getId());
+        } catch (DuplicateKeyException exception) {
+            throw new ApiException("Role name already in use: " + role.getName());
+        } catch (ApiException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            log.error(exception.getMessage());
+            throw new ApiException("An error occurred. Please try again.");
+        }
     }
 
     @Override
     public Boolean delete(Long id) {
-        return null;
+        log.info("Deleting role id: {}", id);
+        try {
+            boolean deleted = jdbc.update(DELETE_ROLE_QUERY, of("id", id)) > 0;
+            roleCatalog.reload();
+            return deleted;
+        } catch (DataIntegrityViolationException exception) {
+            // UserRoles restricts deleting a role that is still assigned
+            throw new ApiException("This role is assigned to users and can't be deleted.");
+        } catch (Exception exception) {
+            log.error(exception.getMessage());
+            throw new ApiException("An error occurred. Please try again.");
+        }
     }
 
     @Override
     public void addRoleToUser(Long userId, String roleName) {
         log.info("Adding role {} to user id: {}", roleName, userId);
+        Long roleId = getRoleIdByName(roleName);
         try {
-            Role role = jdbc.queryForObject(SELECT_ROLE_BY_NAME_QUERY, of("name", roleName), new RoleRowMapper());
-            jdbc.update(INSERT_ROLE_TO_USER_QUERY, of("userId", userId, "roleId", requireNonNull(role).getId()));
-        } catch (EmptyResultDataAccessException exception) {
-            throw new ApiException("No role found by name: " + ROLE_USER.name());
-
+            jdbc.update(INSERT_ROLE_TO_USER_QUERY, of("userId", userId, "roleId", roleId));
         } catch (Exception exception) {
             log.error(exception.getMessage());
             throw new ApiException("An error occurred. Please try again.");
         }
     }
 
+    @Override
+    public Long getRoleIdByName(String roleName) {
+        Role role = roleCatalog.getByName(roleName);
+        if (role == null) throw new ApiException("No role found by name: " + roleName);
+        return role.getId();
+    }
+
     @Override
     public Role getRoleByUserId(Long userId) {
-        log.info("Adding role for user id: {}", userId);
         try {
-            return jdbc.queryForObject(SELECT_ROLE_BY_ID_QUERY, of("id", userId), new RoleRowMapper());
+            return get(jdbc.queryForObject(SELECT_ROLE_ID_BY_USER_ID_QUERY, of("userId", userId), Long.class));
         } catch (EmptyResultDataAccessException exception) {
-            throw new ApiException("No role found by name: " + ROLE_USER.name());
+            throw new ApiException("No role found for user id: " + userId);
+        } catch (ApiException exception) {
+            throw exception;
         } catch (Exception exception) {
             log.error(exception.getMessage());
             throw new ApiException("An error occurred. Please try again.");
@@ -85,11 +144,29 @@ public class RoleRepositoryImpl implements RoleRepository<Role> {
 
     @Override
     public Role getRoleByUserEmail(String email) {
-        return null;
+        try {
+            return get(jdbc.queryForObject(SELECT_ROLE_ID_BY_USER_EMAIL_QUERY, of("email", email), Long.class));
+        } catch (EmptyResultDataAccessException exception) {
+            throw new ApiException("No role found for user email: " + email);
+        } catch (ApiException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            log.error(exception.getMessage());
+            throw new ApiException("An error occurred. Please try again.");
+        }
     }
 
     @Override
     public void updateUserRole(Long userId, String roleName) {
-
+        log.info("Updating role {} for user id: {}", roleName, userId);
+        Long roleId = getRoleIdByName(roleName);
+        try {
+            jdbc.update(UPDATE_USER_ROLE_QUERY, of("userId", userId, "roleId", roleId));
+            // The cached user holds the previous role
+            userCache.evict(userId);
+        } catch (Exception exception) {
+            log.error(exception.getMessage());
+            throw new ApiException("An error occurred. Please try again.");
+        }
     }
 }
@@ -6,38 +6,68 @@
 
 package com.abenezermulugeta.securecapita.repository.implementation;
 
+import com.abenezermulugeta.securecapita.cache.UserCache;
 import com.abenezermulugeta.securecapita.domain.Role;
 import com.abenezermulugeta.securecapita.domain.User;
 import com.abenezermulugeta.securecapita.domain.UserPrincipal;
+import com.abenezermulugeta.securecapita.dto.ImportReport;
 import com.abenezermulugeta.securecapita.dto.UserDTO;
+import com.abenezermulugeta.securecapita.dto.UserSummaryDTO;
+import com.abenezermulugeta.securecapita.dtomapper.UserDTOMapper;
 import com.abenezermulugeta.securecapita.enumeration.VerificationType;
+import com.abenezermulugeta.securecapita.event.UserEventWriter;
 import com.abenezermulugeta.securecapita.exception.ApiException;
+import com.abenezermulugeta.securecapita.provider.BoundedPasswordEncoder;
 import com.abenezermulugeta.securecapita.repository.RoleRepository;
 import com.abenezermulugeta.securecapita.repository.UserRepository;
-import com.abenezermulugeta.securecapita.rowmapper.UserRowMapper;
+import com.abenezermulugeta.securecapita.rowmapper.UserPrincipalRowMapper;
+import com.abenezermulugeta.securecapita.rowmapper.UserSummaryRowMapper;
+import com.abenezermulugeta.securecapita.email.EmailOutbox;
+import com.abenezermulugeta.securecapita.security.TokenRevocationStore;
+import com.abenezermulugeta.securecapita.sms.SmsOutbox;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
-import java.util.Collection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
+import static com.abenezermulugeta.securecapita.enumeration.EventType.ACCOUNT_SETTINGS_UPDATE;
+import static com.abenezermulugeta.securecapita.enumeration.EventType.PASSWORD_UPDATE;
+import static com.abenezermulugeta.securecapita.enumeration.EventType.PROFILE_UPDATE;
 import static com.abenezermulugeta.securecapita.enumeration.RoleType.ROLE_USER;
 import static com.abenezermulugeta.securecapita.enumeration.VerificationType.ACCOUNT;
 import static com.abenezermulugeta.securecapita.enumeration.VerificationType.PASSWORD;
+import static com.abenezermulugeta.securecapita.query.RoleQuery.INSERT_ROLE_TO_USER_QUERY;
 import static com.abenezermulugeta.securecapita.query.UserQuery.*;
 import static java.util.Map.of;
 import static java.util.Objects.requireNonNull;
@@ -48,91 +78,195 @@ import static org.apache.commons.lang3.time.DateUtils.addDays;
 @Repository
 @RequiredArgsConstructor
 @Slf4j
-public class UserRepositoryImpl implements UserRepository<User>, UserDetailsService {
+public class UserRepositoryImpl implements UserRepository<User>, UserDetailsService, UserDetailsPasswordService {
     private final NamedParameterJdbcTemplate jdbc;
     private final RoleRepository<Role> roleRepository;
-    private final BCryptPasswordEncoder passwordEncoder;
+    private final BoundedPasswordEncoder passwordEncoder;
+    private final UserCache userCache;
+    private final UserEventWriter userEventWriter;
+    private final TokenRevocationStore tokenRevocationStore;
+    private final SmsOutbox smsOutbox;
+    private final EmailOutbox emailOutbox;
+    private final TransactionTemplate transactionTemplate;
+    private final Validator validator;
+
+    private static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+    private static final String USER_EMAIL_CONSTRAINT = "UQ_Users_Email";
+
+    @Value("${application.user-import.chunk-size:1000}")
+    private int importChunkSize;
     private final String USER_NOT_FOUND = "User not found in the database.";
     private final String DATE_FORMAT = "yyyy-MM-dd hh:mm:ss";
 
+    /**
+     * The user, the role of the user and the account verification url are saved in one transaction, so a failure
+     * doesn't leave a user without a role. The password is hashed before the transaction is opened, so the connection
+     * isn't held during the BCrypt work. The unique email is enforced by the UQ_Users_Email constraint on insert.
+     */
     @Override
     public User create(User user) {
-        // Check if the email is unique
-        if (getEmailCount(user.getEmail().trim().toLowerCase()) > 0)
-            throw new ApiException("Email already in use. Please use a different email and try again.");
         try {
-            // Generates a new id for the user
-            KeyHolder holder = new GeneratedKeyHolder();
-
-            SqlParameterSource parameters = getSqlParametersForCreatingUser(user);
+            SqlParameterSource parameters = getSqlParametersForCreatingUser(user, passwordEncoder.encode(user.getPassword()));
+            return transactionTemplate.execute(status -> {
+                // Generates a new id for the user
+                KeyHolder holder = new GeneratedKeyHolder();
 
-            // Save the new User
-            jdbc.update(INSERT_USER_QUERY, parameters, holder);
+                // Save the new User
+                jdbc.update(INSERT_USER_QUERY, parameters, holder);
 
-            // Get the generated id of the user
-            user.setId(requireNonNull(holder.getKey().longValue()));
+                // Get the generated id of the user
+                user.setId(requireNonNull(holder.getKey().longValue()));
 
-            // Add Role to the User
-            roleRepository.addRoleToUser(user.getId(), ROLE_USER.name());
+                // Add Role to the User
+                roleRepository.addRoleToUser(user.getId(), ROLE_USER.name());
 
-            // Send verification url
-            String verificationUrl = getVerificationUrl(UUID.randomUUID().toString(), ACCOUNT.getType());
+                // Send verification url
+                String verificationUrl = getVerificationUrl(UUID.randomUUID().toString(), ACCOUNT.getType());
 
-            // Save URL in verification code
-            jdbc.update(INSERT_ACCOUNT_VERIFICATION_URL_QUERY, of("userId", user.getId(), "url", verificationUrl));
+                // Save URL in verification code
+                jdbc.update(INSERT_ACCOUNT_VERIFICATION_URL_QUERY, of("userId", user.getId(), "url", verificationUrl));
 
-            // Send email to user with verification URL
-            // emailService.sendVerificationUrl(user.getFirstName(), user.getEmail(), verificationUrl, ACCOUNT);
+                // The email with the verification URL is sent by the EmailDispatcher once the user is committed
+                emailOutbox.enqueue(user.getFirstName(), user.getEmail(), verificationUrl, ACCOUNT);
 
-            user.setEnabled(false);
-            user.setNotLocked(true);
+                user.setEnabled(false);
+                user.setNotLocked(true);
 
-            // Return the newly created User
-            return user;
+                // Return the newly created User
+                return user;
+            });
 
             // If any errors, throw exception with proper message
+        } catch (DuplicateKeyException exception) {
+            if (!String.valueOf(exception.getMessage()).contains(USER_EMAIL_CONSTRAINT)) {
+                log.error(exception.getMessage());
+                throw new ApiException("An error occurred. Please try again.");
+            }
+            throw new ApiException("Email already in use. Please use a different email and try again.");
+        } catch (ApiException exception) {
+            throw exception;
         } catch (Exception exception) {
             throw new ApiException("An error occurred. Please try again.");
         }
     }
 
+    // The page starts after the given id, so every page is a range scan of the primary key whatever its depth
     @Override
-    public Collection list(int page, int pageSize) {
-        return null;
+    public List<UserSummaryDTO> list(Long afterId, int pageSize, Boolean enabled, Boolean notLocked, Boolean usingMfa) {
+        try {
+            MapSqlParameterSource parameters = new MapSqlParameterSource()
+                    .addValue("afterId", afterId == null ? 0L : afterId)
+                    .addValue("enabled", enabled)
+                    .addValue("notLocked", notLocked)
+                    .addValue("usingMfa", usingMfa)
+                    .addValue("limit", pageSize);
+            return jdbc.query(SELECT_USERS_AFTER_ID_QUERY, parameters, new UserSummaryRowMapper(roleRepository::get));
+        } catch (Exception exception) {
+            log.error(exception.getMessage());
+            throw new ApiException("An error occurred. Please try again.");
+        }
     }
 
+    // The user is read through the user cache and returned without the password
     @Override
     public User get(Long id) {
-        return null;
+        return UserDTOMapper.toUser(getUserPrincipalById(id).getUser());
     }
 
+    // Profile values left null in the user keep the stored ones, see UPDATE_USER_QUERY
     @Override
-    public User update(User data) {
-        return null;
+    public User update(User user) {
+        try {
+            MapSqlParameterSource parameters = new MapSqlParameterSource()
+                    .addValue("id", user.getId())
+                    .addValue("firstName", user.getFirstName())
+                    .addValue("lastName", user.getLastName())
+                    .addValue("address", user.getAddress())
+                    .addValue("phone", user.getPhone())
+                    .addValue("title", user.getTitle())
+                    .addValue("bio", user.getBio());
+            if (jdbc.update(UPDATE_USER_QUERY, parameters) == 0) throw new ApiException("No User found by id: " + user.getId());
+            userCache.evict(user.getId());
+            userEventWriter.publish(PROFILE_UPDATE, user.getId());
+            return get(user.getId());
+        } catch (ApiException exception) {
+            throw exception;
+        } catch (Exception exception) {
+            log.error(exception.getMessage());
+            throw new ApiException("An error occurred. Please try again.");
+        }
     }
 
     @Override
     public Boolean delete(Long id) {
-        return null;
+        try {
+            // The roles, events and verifications of the user are deleted by the foreign keys
+            boolean deleted = jdbc.update(DELETE_USER_QUERY, of("id", id)) > 0;
+            userCache.evictDeleted(id);
+            // The tokens of a deleted user would otherwise stay valid until they expire
+            if (deleted) tokenRevocationStore.revokeAll(id);
+            return deleted;
+        } catch (Exception exception) {
+            log.error(exception.getMessage());
+            throw new ApiException("An error occurred. Please try again.");
+        }
     }
 
     @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        User user = getUserByEmail(email);
-        if (user == null) {
+        // Not read through the user cache, the password and the lock state are always the ones in the database
+        try {
+            UserPrincipal userPrincipal = jdbc.queryForObject(SELECT_USER_PRINCIPAL_WITH_PASSWORD_BY_EMAIL_QUERY, of("email", email), new UserPrincipalRowMapper(roleRepository::get, true));
+            log.info("User found: {}", email);
+            return userPrincipal;
+        } catch (EmptyResultDataAccessException exception) {
             log.error(USER_NOT_FOUND);
             throw new UsernameNotFoundException(USER_NOT_FOUND);
-        } else {
-            log.info("User found in the database: {}", email);
-            return new UserPrincipal(user, roleRepository.getRoleByUserId(user.getId()));
         }
     }
 
+    // Called in the background with a new hash when the stored hash has an outdated strength, the hash is only replaced
+    // while it is still the one the user logged in with
     @Override
-    public User getUserByEmail(String email) {
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        Long userId = ((UserPrincipal) user).getUserId();
         try {
-            User user = jdbc.queryForObject(SELECT_USER_BY_EMAIL_QUERY, of("email", email), new UserRowMapper());
+            if (jdbc.update(UPDATE_USER_PASSWORD_QUERY, of("password", newPassword, "userId", userId, "oldPassword", user.getPassword())) == 0) {
+                log.info("Password of user id: {} changed since the login, the hash is not replaced", userId);
+                return user;
+            }
+            log.info("Password hash replaced for user id: {}", userId);
             return user;
+        } catch (Exception exception) {
+            log.error(exception.getMessage());
+            throw new ApiException("An error occurred. Please try again.");
+        }
+    }
+
+    @Override
+    public UserPrincipal getUserPrincipalByEmail(String email) {
+        // The email is resolved to the id, the user and the role are then cached together and loaded with one query
+        return userCache.getByEmail(email, key -> {
+            try {
+                return jdbc.queryForObject(SELECT_USER_ID_BY_EMAIL_QUERY, of("email", key), Long.class);
+            } catch (EmptyResultDataAccessException exception) {
+                throw new ApiException("No User found by email: " + key);
+            } catch (Exception exception) {
+                log.error(exception.getMessage());
+                throw new ApiException("An error occurred. Please try again.");
+            }
+        }, this::loadUserPrincipalById);
+    }
+
+    @Override
+    public UserPrincipal getUserPrincipalById(Long id) {
+        return userCache.getById(id, this::loadUserPrincipalById);
+    }
+
+    @Override
+    public UserPrincipal getUncachedUserPrincipalByEmail(String email) {
+        try {
+            return jdbc.queryForObject(SELECT_USER_PRINCIPAL_BY_EMAIL_QUERY, of("email", email), new UserPrincipalRowMapper(roleRepository::get));
         } catch (EmptyResultDataAccessException exception) {
             throw new ApiException("No User found by email: " + email);
         } catch (Exception exception) {
@@ -141,7 +275,9 @@ public class UserRepositoryImpl implements UserRepository<User>, UserDetailsServ
         }
     }
 
+    // The code and its SMS are written in one transaction, the SMS is sent by the SmsDispatcher once it is committed
     @Override
+    @Transactional
     public void sendVerificationCode(UserDTO userDto) {
         String expirationDate = format(addDays(new Date(), 1), DATE_FORMAT);
         String verificationCode = randomAlphabetic(8).toUpperCase();
@@ -149,62 +285,69 @@ public class UserRepositoryImpl implements UserRepository<User>, UserDetailsServ
         try {
             jdbc.update(DELETE_VERIFICATION_CODE_BY_USER_ID_QUERY, of("id", userDto.getId()));
             jdbc.update(INSERT_VERIFICATION_CODE_QUERY, of("userId", userDto.getId(), "verificationCode", verificationCode, "expirationDate", expirationDate));
-
-            /**
-             * Uncomment this line to activate two-factor authentication using SMS
-             * sendSMS(userDto.getPhone(), "From: SecureCapita \n Use the following code within 24 hours to enable two-factor authentication. \n Verification Code: " + verificationCode);
-             * */
-            log.info("Verification code: {}", verificationCode);
+            if (StringUtils.isNotBlank(userDto.getPhone())) {
+                smsOutbox.enqueue(userDto.getPhone(), "From: SecureCapita \n Use the following code within 24 hours to enable two-factor authentication. \n Verification Code: " + verificationCode);
+            } else {
+                log.warn("User id: {} has no phone number, the verification code can't be sent", userDto.getId());
+            }
         } catch (Exception exception) {
             log.error(exception.getMessage());
             throw new ApiException("An error occurred. Please try again");
         }
     }
 
+    /**
+     * Consumes the code of the user: one locking read of the code (scoped to the user by the email) with the user and
+     * one delete of the code, in one transaction. A concurrent submission of the same code waits for the lock and then
+     * finds no code, so a code is only accepted once.
+     */
     @Override
-    public User verifyCode(String email, String code) {
-        if (isVerificationCodeExpired(code)) throw new ApiException("This code has expired. Please login again.");
+    @Transactional
+    public UserPrincipal verifyCode(String email, String code) {
         try {
-            User userByCode = jdbc.queryForObject(SELECT_USER_BY_CODE_QUERY, of("code", code), new UserRowMapper());
-            User userByEmail = jdbc.queryForObject(SELECT_USER_BY_EMAIL_QUERY, of("email", email), new UserRowMapper());
-
-            if (userByCode.getEmail().equalsIgnoreCase(userByEmail.getEmail())) {
-                jdbc.update(DELETE_CODE, of("code", code));
-                return userByCode;
-            } else {
-                throw new ApiException("Code is invalid. Can you check please?");
-            }
-        } catch (EmptyResultDataAccessException exception) {
-            throw new ApiException("Could not find record.");
+            UserPrincipalRowMapper rowMapper = new UserPrincipalRowMapper(roleRepository::get);
+            VerificationCode verificationCode = jdbc.query(SELECT_USER_BY_EMAIL_AND_CODE_FOR_UPDATE_QUERY, of("email", email, "code", code), resultSet -> resultSet.next() ?
+                    new VerificationCode(resultSet.getLong("verification_id"), resultSet.getBoolean("is_expired"), rowMapper.mapRow(resultSet, 0)) : null);
+            if (verificationCode == null) throw new ApiException("This code is not valid. Please try logging in again.");
+            if (verificationCode.expired()) throw new ApiException("This code has expired. Please login again.");
+            // The lock makes a concurrent consumption wait, the delete count still has to confirm this one consumed the code
+            if (jdbc.update(DELETE_VERIFICATION_CODE_BY_ID_QUERY, of("id", verificationCode.id())) != 1)
+                throw new ApiException("This code is not valid. Please try logging in again.");
+            return verificationCode.userPrincipal();
+        } catch (ApiException exception) {
+            throw exception;
         } catch (Exception exception) {
+            log.error(exception.getMessage());
             throw new ApiException("An error occurred. Please try again.");
         }
     }
 
+    // The url and its email are written in one transaction, the email is sent by the EmailDispatcher once it is committed
     @Override
+    @Transactional
     public void sendPasswordResetLink(String email) {
         if (getEmailCount(email.trim().toLowerCase()) <= 0)
             throw new ApiException("There is no account linked to this email. Use a different email.");
 
         try {
             String expirationDate = format(addDays(new Date(), 1), DATE_FORMAT);
-            User user = getUserByEmail(email);
+            UserPrincipal userPrincipal = getUserPrincipalByEmail(email);
+            Long userId = userPrincipal.getUserId();
             String verificationUrl = getVerificationUrl(UUID.randomUUID().toString(), PASSWORD.getType());
-            jdbc.update(DELETE_PASSWORD_VERIFICATION_BY_USER_ID_QUERY, Map.of("userId", user.getId()));
-            jdbc.update(INSERT_PASSWORD_VERIFICATION_QUERY, Map.of("userId", user.getId(), "url", verificationUrl, "expirationDate", expirationDate));
-            // TODO send email with url to user
-            log.info("Verification url: {}", verificationUrl);
+            jdbc.update(DELETE_PASSWORD_VERIFICATION_BY_USER_ID_QUERY, Map.of("userId", userId));
+            jdbc.update(INSERT_PASSWORD_VERIFICATION_QUERY, Map.of("userId", userId, "url", verificationUrl, "expirationDate", expirationDate));
+            emailOutbox.enqueue(userPrincipal.getUser().getFirstName(), userPrincipal.getUsername(), verificationUrl, PASSWORD);
         } catch (Exception exception) {
             throw new ApiException("An error occurred. Please try again.");
         }
     }
 
     @Override
-    public User verifyPasswordKey(String key) {
+    public UserPrincipal verifyPasswordKey(String key) {
         if(isLinkExpired(key, PASSWORD)) throw new ApiException("This link has expired. Please reset your password again.");
 
         try {
-            User user = jdbc.queryForObject(SELECT_USER_BY_PASSWORD_URL_QUERY, Map.of("url", getVerificationUrl(key, PASSWORD.getType())), new UserRowMapper());
+            UserPrincipal user = jdbc.queryForObject(SELECT_USER_BY_PASSWORD_URL_QUERY, Map.of("url", getVerificationUrl(key, PASSWORD.getType())), new UserPrincipalRowMapper(roleRepository::get));
             return user;
         } catch (EmptyResultDataAccessException exception) {
             log.error(exception.getMessage());
@@ -220,8 +363,15 @@ public class UserRepositoryImpl implements UserRepository<User>, UserDetailsServ
         if(!password.equalsIgnoreCase(confirmPassword)) throw new ApiException("Your password doesn't match the confirmation password. Try again.");
 
         try {
+            Long userId = jdbc.queryForObject(SELECT_USER_ID_BY_PASSWORD_URL_QUERY, Map.of("url", getVerificationUrl(key, PASSWORD.getType())), Long.class);
             jdbc.update(UPDATE_PASSWORD_BY_URL_QUERY, Map.of("password", passwordEncoder.encode(password), "url", getVerificationUrl(key, PASSWORD.getType())));
             jdbc.update(DELETE_VERIFICATION_BY_URL_QUERY, Map.of("url", getVerificationUrl(key, PASSWORD.getType())));
+            userCache.evict(userId);
+            // Sessions opened with the previous password end with the reset
+            tokenRevocationStore.revokeAll(userId);
+            userEventWriter.publish(PASSWORD_UPDATE, userId);
+        } catch (EmptyResultDataAccessException exception) {
+            throw new ApiException("This link is not valid. Please try resetting password again.");
         } catch (Exception exception) {
             log.error(exception.getMessage());
             throw new ApiException(("An error occurred. Please try again."));
@@ -229,10 +379,12 @@ public class UserRepositoryImpl implements UserRepository<User>, UserDetailsServ
     }
 
     @Override
-    public User verifyAccountKey(String key) {
+    public UserPrincipal verifyAccountKey(String key) {
         try {
-            User user = jdbc.queryForObject(SELECT_USER_BY_ACCOUNT_URL_QUERY, Map.of("url", getVerificationUrl(key, ACCOUNT.getType())), new UserRowMapper());
-            jdbc.update(UPDATE_USER_ENABLED_QUERY, Map.of("enabled", true, "userId", user.getId()));
+            UserPrincipal user = jdbc.queryForObject(SELECT_USER_BY_ACCOUNT_URL_QUERY, Map.of("url", getVerificationUrl(key, ACCOUNT.getType())), new UserPrincipalRowMapper(roleRepository::get));
+            jdbc.update(UPDATE_USER_ENABLED_QUERY, Map.of("enabled", true, "userId", user.getUserId()));
+            userCache.evict(user.getUserId());
+            if (!user.isEnabled()) userEventWriter.publish(ACCOUNT_SETTINGS_UPDATE, user.getUserId());
             // After updating, we can remove the account verification url from the database.
             return user;
         } catch (EmptyResultDataAccessException exception) {
@@ -242,33 +394,196 @@ public class UserRepositoryImpl implements UserRepository<User>, UserDetailsServ
         }
     }
 
-    private Boolean isLinkExpired(String key, VerificationType verificationType) {
+    @Override
+    public Map<String, Long> countUsersByPasswordStrength() {
+        Map<String, Long> usersByStrength = new LinkedHashMap<>();
+        jdbc.query(COUNT_USERS_BY_PASSWORD_STRENGTH_QUERY, resultSet -> {
+            usersByStrength.put(resultSet.getString("strength"), resultSet.getLong("users"));
+        });
+        return usersByStrength;
+    }
+
+    /**
+     * Creates the users in chunks, each chunk in its own transaction: the passwords are hashed in parallel before the
+     * transaction is opened, then the users, their roles, their account verification urls and the verification emails
+     * are inserted with one batch each. Rows that can't be imported (missing values, emails already in use or repeated
+     * in the file) are reported once and skipped, the rest goes on.
+     */
+    @Override
+    public ImportReport importUsers(List<User> users) {
+        List<ImportReport.Failure> failures = new ArrayList<>();
+        Map<String, Integer> rowsByEmail = new HashMap<>();
+        List<Integer> validRows = new ArrayList<>();
+        for (int row = 1; row <= users.size(); row++) {
+            User user = users.get(row - 1);
+            String reason = getImportFailureReason(user);
+            if (reason == null && rowsByEmail.putIfAbsent(getEmailKey(user.getEmail()), row) != null) reason = "Email repeated in the import.";
+            if (reason != null) failures.add(new ImportReport.Failure(row, user.getEmail(), reason));
+            else validRows.add(row);
+        }
+        Long roleId = roleRepository.getRoleIdByName(ROLE_USER.name());
+        int imported = 0;
+        for (int start = 0; start < validRows.size(); start += importChunkSize) {
+            imported += importChunk(users, validRows.subList(start, Math.min(start + importChunkSize, validRows.size())), roleId, failures);
+        }
+        failures.sort(Comparator.comparingInt(ImportReport.Failure::getRow));
+        log.info("Imported {} of {} users", imported, users.size());
+        return new ImportReport(users.size(), imported, failures);
+    }
+
+    @Override
+    public void exportUsers(RowCallbackHandler rowCallbackHandler) {
+        jdbc.getJdbcOperations().query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SELECT_USERS_FOR_EXPORT_QUERY, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // Makes the MySQL driver stream the rows one by one instead of reading the whole result into memory
+            statement.setFetchSize(STREAMING_FETCH_SIZE);
+            return statement;
+        }, rowCallbackHandler);
+    }
+
+    @Override
+    public void lockUser(String email, Date lockedUntil) {
         try {
-            return jdbc.queryForObject(SELECT_EXPIRATION_BY_URL_QUERY, of("url", getVerificationUrl(key, PASSWORD.getType())), Boolean.class);
-        } catch (EmptyResultDataAccessException exception) {
+            // Nothing is updated for an unknown email, the caller gets the same bad credentials error either way
+            if (jdbc.update(LOCK_USER_QUERY, of("lockedUntil", lockedUntil, "email", email)) == 0) return;
+            // Only the id is needed for the eviction, loading the principal through the cache would just fill it again
+            Long userId = jdbc.queryForObject(SELECT_USER_ID_BY_EMAIL_QUERY, of("email", email), Long.class);
+            userCache.evict(userId);
+            log.info("User id {} locked until {}", userId, lockedUntil);
+        } catch (Exception exception) {
             log.error(exception.getMessage());
-            throw new ApiException("This link is not valid. Please try resetting password again.");
+            throw new ApiException("An error occurred. Please try again.");
+        }
+    }
+
+    @Override
+    public void unlockExpiredUsers() {
+        List<Long> userIds = jdbc.queryForList(SELECT_USER_IDS_TO_UNLOCK_QUERY, of(), Long.class);
+        if (userIds.isEmpty()) return;
+        jdbc.update(UNLOCK_USERS_QUERY, of("ids", userIds));
+        userIds.forEach(userCache::evict);
+        log.info("Unlocked {} users", userIds.size());
+    }
+
+    private UserPrincipal loadUserPrincipalById(Long id) {
+        try {
+            return jdbc.queryForObject(SELECT_USER_PRINCIPAL_BY_ID_QUERY, of("id", id), new UserPrincipalRowMapper(roleRepository::get));
+        } catch (EmptyResultDataAccessException exception) {
+            throw new ApiException("No User found by id: " + id);
         } catch (Exception exception) {
-            throw new ApiException(("An error occurred. Please try again."));
+            log.error(exception.getMessage());
+            throw new ApiException("An error occurred. Please try again.");
         }
     }
 
-    private boolean isVerificationCodeExpired(String code) {
+    private Boolean isLinkExpired(String key, VerificationType verificationType) {
         try {
-            return jdbc.queryForObject(SELECT_CODE_EXPIRATION_QUERY, of("code", code), Boolean.class);
+            return jdbc.queryForObject(SELECT_EXPIRATION_BY_URL_QUERY, of("url", getVerificationUrl(key, PASSWORD.getType())), Boolean.class);
         } catch (EmptyResultDataAccessException exception) {
-            throw new ApiException("This code is not valid. Please try logging in again.");
+            log.error(exception.getMessage());
+            throw new ApiException("This link is not valid. Please try resetting password again.");
         } catch (Exception exception) {
             throw new ApiException(("An error occurred. Please try again."));
         }
     }
 
-    private SqlParameterSource getSqlParametersForCreatingUser(User user) {
+    private SqlParameterSource getSqlParametersForCreatingUser(User user, String encodedPassword) {
         return new MapSqlParameterSource()
                 .addValue("firstName", user.getFirstName())
                 .addValue("lastName", user.getLastName())
                 .addValue("email", user.getEmail())
-                .addValue("password", passwordEncoder.encode(user.getPassword()));
+                .addValue("password", encodedPassword);
+    }
+
+    /**
+     * Imports the rows of one chunk whose email isn't in use. When a registration takes one of the emails during the
+     * import, the insert fails on UQ_Users_Email and the transaction is rolled back: the emails taken in the meantime
+     * are reported and the rest of the chunk is inserted again with the same hashes.
+     */
+    private int importChunk(List<User> users, List<Integer> rows, Long roleId, List<ImportReport.Failure> failures) {
+        List<Integer> newRows = removeRowsWithEmailInUse(users, rows, failures);
+        if (newRows.isEmpty()) return 0;
+        List<String> passwords = passwordEncoder.encodeAll(newRows.stream().map(row -> users.get(row - 1).getPassword()).toList());
+        Map<Integer, String> passwordsByRow = new HashMap<>();
+        for (int i = 0; i < newRows.size(); i++) passwordsByRow.put(newRows.get(i), passwords.get(i));
+
+        while (!newRows.isEmpty()) {
+            List<Integer> insertedRows = newRows;
+            try {
+                transactionTemplate.executeWithoutResult(status -> insertUsers(users, insertedRows, passwordsByRow, roleId));
+                return insertedRows.size();
+            } catch (DuplicateKeyException exception) {
+                newRows = removeRowsWithEmailInUse(users, insertedRows, failures);
+                if (newRows.size() == insertedRows.size()) {
+                    reportImportError(users, insertedRows, failures, exception);
+                    return 0;
+                }
+            } catch (Exception exception) {
+                reportImportError(users, insertedRows, failures, exception);
+                return 0;
+            }
+        }
+        return 0;
+    }
+
+    private List<Integer> removeRowsWithEmailInUse(List<User> users, List<Integer> rows, List<ImportReport.Failure> failures) {
+        List<String> existingEmails = jdbc.queryForList(SELECT_EXISTING_EMAILS_QUERY,
+                of("emails", rows.stream().map(row -> users.get(row - 1).getEmail()).toList()), String.class);
+        Set<String> existingEmailKeys = existingEmails.stream().map(this::getEmailKey).collect(Collectors.toSet());
+        List<Integer> newRows = new ArrayList<>(rows.size());
+        for (Integer row : rows) {
+            User user = users.get(row - 1);
+            if (existingEmailKeys.contains(getEmailKey(user.getEmail()))) failures.add(new ImportReport.Failure(row, user.getEmail(), "Email already in use."));
+            else newRows.add(row);
+        }
+        return newRows;
+    }
+
+    private void insertUsers(List<User> users, List<Integer> rows, Map<Integer, String> passwordsByRow, Long roleId) {
+        List<User> newUsers = rows.stream().map(row -> users.get(row - 1)).toList();
+        SqlParameterSource[] userParameters = new SqlParameterSource[newUsers.size()];
+        for (int i = 0; i < newUsers.size(); i++) {
+            User user = newUsers.get(i);
+            userParameters[i] = new MapSqlParameterSource()
+                    .addValue("firstName", user.getFirstName())
+                    .addValue("lastName", user.getLastName())
+                    .addValue("email", user.getEmail())
+                    .addValue("password", passwordsByRow.get(rows.get(i)));
+        }
+        jdbc.batchUpdate(INSERT_USER_QUERY, userParameters);
+
+        // Batch inserts don't return the generated keys, so the ids are read back with one query by email
+        Map<String, Long> idsByEmail = new HashMap<>();
+        jdbc.query(SELECT_USER_IDS_BY_EMAILS_QUERY, of("emails", newUsers.stream().map(User::getEmail).toList()),
+                (RowCallbackHandler) resultSet -> idsByEmail.put(getEmailKey(resultSet.getString("email")), resultSet.getLong("id")));
+        SqlParameterSource[] roleParameters = new SqlParameterSource[newUsers.size()];
+        SqlParameterSource[] verificationParameters = new SqlParameterSource[newUsers.size()];
+        List<String> verificationUrls = new ArrayList<>(newUsers.size());
+        for (int i = 0; i < newUsers.size(); i++) {
+            Long userId = idsByEmail.get(getEmailKey(newUsers.get(i).getEmail()));
+            String verificationUrl = getVerificationUrl(UUID.randomUUID().toString(), ACCOUNT.getType());
+            verificationUrls.add(verificationUrl);
+            roleParameters[i] = new MapSqlParameterSource().addValue("userId", userId).addValue("roleId", roleId);
+            verificationParameters[i] = new MapSqlParameterSource().addValue("userId", userId).addValue("url", verificationUrl);
+        }
+        jdbc.batchUpdate(INSERT_ROLE_TO_USER_QUERY, roleParameters);
+        jdbc.batchUpdate(INSERT_ACCOUNT_VERIFICATION_URL_QUERY, verificationParameters);
+        // Like a registration, the verification emails are sent by the EmailDispatcher once the users are committed
+        emailOutbox.enqueueAll(newUsers, verificationUrls, ACCOUNT);
+    }
+
+    private void reportImportError(List<User> users, List<Integer> rows, List<ImportReport.Failure> failures, Exception exception) {
+        log.error("Could not import users {} to {}: {}", rows.get(0), rows.get(rows.size() - 1), exception.getMessage());
+        rows.forEach(row -> failures.add(new ImportReport.Failure(row, users.get(row - 1).getEmail(), "An error occurred. Please try again.")));
+    }
+
+    // The same constraints as a registration (the validation annotations of User), null when the user is valid
+    private String getImportFailureReason(User user) {
+        return validator.validate(user).stream().map(ConstraintViolation::getMessage).sorted().findFirst().orElse(null);
+    }
+
+    private String getEmailKey(String email) {
+        return email.trim().toLowerCase();
     }
 
     private Integer getEmailCount(String email) {
@@ -279,4 +594,8 @@ public class UserRepositoryImpl implements UserRepository<User>, UserDetailsServ
         // ServletUriComponentsBuilder.fromCurrentContextPath() method returns the url that this server is running on
         return ServletUriComponentsBuilder.fromCurrentContextPath().path("/users/verify/" + accountType + '/' + key).toUriString();
     }
+
+    // A two-factor code read for consumption, with its user
+    private record VerificationCode(Long id, boolean expired, UserPrincipal userPrincipal) {
+    }
 }
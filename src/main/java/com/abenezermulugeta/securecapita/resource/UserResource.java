@@ -7,55 +7,99 @@
 package com.abenezermulugeta.securecapita.resource;
 
 import com.abenezermulugeta.securecapita.domain.HttpResponse;
+import com.abenezermulugeta.securecapita.domain.Role;
 import com.abenezermulugeta.securecapita.domain.User;
 import com.abenezermulugeta.securecapita.domain.UserPrincipal;
+import com.abenezermulugeta.securecapita.domain.VerifiedToken;
+import com.abenezermulugeta.securecapita.dto.ImportReport;
+import com.abenezermulugeta.securecapita.dto.KeysetPage;
 import com.abenezermulugeta.securecapita.dto.UserDTO;
+import com.abenezermulugeta.securecapita.dto.UserEventDTO;
+import com.abenezermulugeta.securecapita.dto.UserSummaryDTO;
 import com.abenezermulugeta.securecapita.dtomapper.UserDTOMapper;
+import com.abenezermulugeta.securecapita.enumeration.ExportFormat;
+import com.abenezermulugeta.securecapita.enumeration.TokenType;
+import com.abenezermulugeta.securecapita.event.UserEventWriter;
 import com.abenezermulugeta.securecapita.exception.ApiException;
+import com.abenezermulugeta.securecapita.form.IntrospectionForm;
 import com.abenezermulugeta.securecapita.form.LoginForm;
+import com.abenezermulugeta.securecapita.form.LogoutForm;
 import com.abenezermulugeta.securecapita.form.PasswordResetForm;
+import com.abenezermulugeta.securecapita.form.UpdateUserForm;
+import com.abenezermulugeta.securecapita.metrics.LoginMetrics;
+import com.abenezermulugeta.securecapita.provider.TokenIntrospector;
 import com.abenezermulugeta.securecapita.provider.TokenProvider;
-import com.abenezermulugeta.securecapita.service.RoleService;
+import com.abenezermulugeta.securecapita.ratelimit.LoginRateLimiter;
+import com.abenezermulugeta.securecapita.security.HasAnyPermission;
+import com.abenezermulugeta.securecapita.security.RefreshTokenStore;
+import com.abenezermulugeta.securecapita.security.TokenRevocationStore;
+import com.abenezermulugeta.securecapita.service.EventService;
 import com.abenezermulugeta.securecapita.service.UserService;
 import com.abenezermulugeta.securecapita.utils.ExceptionUtils;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.net.URI;
 import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 import static java.time.LocalTime.now;
 import static java.util.Map.of;
+import static com.abenezermulugeta.securecapita.enumeration.EventType.LOGIN_ATTEMPT;
+import static com.abenezermulugeta.securecapita.enumeration.Permission.CREATE_USER;
+import static com.abenezermulugeta.securecapita.enumeration.Permission.READ_SYSTEM;
+import static com.abenezermulugeta.securecapita.enumeration.Permission.UPDATE_USER;
+import static com.abenezermulugeta.securecapita.security.PermissionAuthorizationManager.hasAnyPermission;
+import static com.abenezermulugeta.securecapita.enumeration.EventType.LOGIN_ATTEMPT_FAILURE;
+import static com.abenezermulugeta.securecapita.enumeration.EventType.LOGIN_ATTEMPT_SUCCESS;
 import static org.springframework.security.authentication.UsernamePasswordAuthenticationToken.unauthenticated;
 
 @RestController
 @RequestMapping(path = "/users")
 @RequiredArgsConstructor
+@Slf4j
 public class UserResource {
     private final UserService userService;
-    private final RoleService roleService;
+    private final EventService eventService;
     private final AuthenticationManager authenticationManager;
     private final TokenProvider tokenProvider;
+    private final TokenIntrospector tokenIntrospector;
+    private final LoginMetrics loginMetrics;
+    private final LoginRateLimiter loginRateLimiter;
+    private final UserEventWriter userEventWriter;
+    private final TokenRevocationStore tokenRevocationStore;
+    private final RefreshTokenStore refreshTokenStore;
     private final HttpServletRequest request;
     private final HttpServletResponse response;
     public static final String TOKEN_PREFIX = "Bearer ";
+    private static final int MAXIMUM_PAGE_SIZE = 100;
 
     @PostMapping("/login")
     public ResponseEntity<HttpResponse> login(@RequestBody @Valid LoginForm loginForm) {
         Authentication authentication = authenticateUser(loginForm.getEmail(), loginForm.getPassword());
-        UserDTO userDTO = getAuthenticatedUser(authentication);
-        return userDTO.isUsingMfa() ? sendVerificationCode(userDTO) : sendResponse(userDTO);
+        // The principal loaded by the authentication manager is used for the response and for signing both tokens
+        UserPrincipal userPrincipal = (UserPrincipal) authentication.getPrincipal();
+        UserDTO userDTO = userPrincipal.getUser();
+        if (userDTO.isUsingMfa()) return sendVerificationCode(userDTO);
+        userEventWriter.publish(LOGIN_ATTEMPT_SUCCESS, userDTO.getId());
+        return sendResponse(userDTO, userPrincipal);
     }
 
     @PostMapping("/register")
@@ -73,32 +117,160 @@ public class UserResource {
 
     @GetMapping("/verify/code/{email}/{code}")
     public ResponseEntity<HttpResponse> verifyCode(@PathVariable("email") String email, @PathVariable("code") String code) {
-        UserDTO userDTO = userService.verifyCode(email, code);
+        UserDTO userDTO;
+        try {
+            userDTO = userService.verifyCode(email, code);
+        } catch (ApiException exception) {
+            userEventWriter.publish(LOGIN_ATTEMPT_FAILURE, email);
+            throw exception;
+        }
+        userEventWriter.publish(LOGIN_ATTEMPT_SUCCESS, userDTO.getId());
+        return sendResponse(userDTO, getUserPrincipal(userDTO));
+    }
+
+    /**
+     * @param authentication - set from CustomAuthorizationFilter automatically by Spring and injected to the method
+     */
+    @GetMapping("/profile")
+    public ResponseEntity<HttpResponse> profile(Authentication authentication) {
+        // The principal may only hold the token claims, so the full profile is loaded here by the email of the authenticated user
+        UserDTO userDTO = userService.getUserByEmail(getAuthenticatedEmail(authentication));
         return ResponseEntity.ok().body(
                 HttpResponse.builder()
                         .timeStamp(now().toString())
-                        .data(of(
-                                "user", userDTO,
-                                "access_token", tokenProvider.createAccessToken(getUserPrincipal(userDTO)),
-                                "refresh_token", tokenProvider.createRefreshToken(getUserPrincipal(userDTO))))
-                        .message("Login successful.")
+                        .data(of("user", userDTO))
+                        .message("User profile retrieved.")
+                        .httpStatus(HttpStatus.OK)
+                        .statusCode(HttpStatus.OK.value())
+                        .build());
+    }
+
+    @PutMapping("/update")
+    public ResponseEntity<HttpResponse> updateUser(Authentication authentication, @RequestBody @Valid UpdateUserForm updateUserForm) {
+        // Users only update their own profile, and only the values sent in the request
+        User user = User.builder()
+                .id(((UserDTO) authentication.getPrincipal()).getId())
+                .firstName(updateUserForm.getFirstName())
+                .lastName(updateUserForm.getLastName())
+                .address(updateUserForm.getAddress())
+                .phone(updateUserForm.getPhone())
+                .title(updateUserForm.getTitle())
+                .bio(updateUserForm.getBio())
+                .build();
+        UserDTO userDTO = userService.updateUser(user);
+        return ResponseEntity.ok().body(
+                HttpResponse.builder()
+                        .timeStamp(now().toString())
+                        .data(of("user", userDTO))
+                        .message("User updated.")
                         .httpStatus(HttpStatus.OK)
                         .statusCode(HttpStatus.OK.value())
                         .build());
     }
 
     /**
-     * @param authentication - set from CustomAuthorizationFilter automatically by Spring and injected to the method
+     * Lists users by id for administration, with optional filters. The nextCursor of the response gets the next page.
      */
-    @GetMapping("/profile")
-    public ResponseEntity<HttpResponse> profile(Authentication authentication) {
-        // authentication.getName() holds the email of the currently authenticated user
-        UserDTO userDTO = userService.getUserByEmail(authentication.getName());
+    @GetMapping("/list")
+    @HasAnyPermission(UPDATE_USER)
+    public ResponseEntity<HttpResponse> listUsers(@RequestParam(name = "cursor", required = false) String cursor,
+                                                  @RequestParam(name = "size", defaultValue = "20") int size,
+                                                  @RequestParam(name = "enabled", required = false) Boolean enabled,
+                                                  @RequestParam(name = "notLocked", required = false) Boolean notLocked,
+                                                  @RequestParam(name = "usingMfa", required = false) Boolean usingMfa) {
+        KeysetPage<UserSummaryDTO> users = userService.getUsers(cursor, Math.max(1, Math.min(size, MAXIMUM_PAGE_SIZE)), enabled, notLocked, usingMfa);
         return ResponseEntity.ok().body(
                 HttpResponse.builder()
                         .timeStamp(now().toString())
-                        .data(of("user", userDTO))
-                        .message("User profile retrieved.")
+                        .data(of("users", users))
+                        .message("Users retrieved.")
+                        .httpStatus(HttpStatus.OK)
+                        .statusCode(HttpStatus.OK.value())
+                        .build());
+    }
+
+    /**
+     * Creates many users at once, like when onboarding a customer. Rows that can't be imported are listed in the report
+     * with the reason and don't stop the rest of the import.
+     */
+    @PostMapping("/import")
+    @HasAnyPermission(CREATE_USER)
+    public ResponseEntity<HttpResponse> importUsers(@RequestBody List<User> users) {
+        ImportReport importReport = userService.importUsers(users);
+        return ResponseEntity.ok().body(
+                HttpResponse.builder()
+                        .timeStamp(now().toString())
+                        .data(of("report", importReport))
+                        .message(importReport.getImported() + " of " + importReport.getTotal() + " users imported.")
+                        .httpStatus(HttpStatus.OK)
+                        .statusCode(HttpStatus.OK.value())
+                        .build());
+    }
+
+    /**
+     * Streams every user as NDJSON (default) or CSV straight from the database to the client, gzip compressed when the
+     * client accepts it.
+     */
+    @GetMapping("/export")
+    @HasAnyPermission(UPDATE_USER)
+    public ResponseEntity<StreamingResponseBody> exportUsers(@RequestParam(name = "format", defaultValue = "ndjson") String format,
+                                                             @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        ExportFormat exportFormat = ExportFormat.from(format);
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        StreamingResponseBody body = outputStream -> {
+            long users = userService.exportUsers(exportFormat, gzip ? new GZIPOutputStream(outputStream, 64 * 1024) : outputStream);
+            log.info("Exported {} users as {}", users, exportFormat);
+        };
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users." + exportFormat.getExtension());
+        if (gzip) builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        return builder.body(body);
+    }
+
+    @GetMapping("/get/{id}")
+    @HasAnyPermission(UPDATE_USER)
+    public ResponseEntity<HttpResponse> getUser(@PathVariable("id") Long id) {
+        return ResponseEntity.ok().body(
+                HttpResponse.builder()
+                        .timeStamp(now().toString())
+                        .data(of("user", userService.getUser(id)))
+                        .message("User retrieved.")
+                        .httpStatus(HttpStatus.OK)
+                        .statusCode(HttpStatus.OK.value())
+                        .build());
+    }
+
+    @DeleteMapping("/delete/{id}")
+    public ResponseEntity<HttpResponse> deleteUser(@PathVariable("id") Long id) {
+        return ResponseEntity.ok().body(
+                HttpResponse.builder()
+                        .timeStamp(now().toString())
+                        .message(userService.deleteUser(id) ? "User deleted." : "No user found by id: " + id)
+                        .httpStatus(HttpStatus.OK)
+                        .statusCode(HttpStatus.OK.value())
+                        .build());
+    }
+
+    /**
+     * Lists the security events of the authenticated user, newest first. Users with the UPDATE:USER authority can
+     * list the events of another user with the userId parameter. The nextCursor of the response gets the next page.
+     */
+    @GetMapping("/events")
+    public ResponseEntity<HttpResponse> events(Authentication authentication,
+                                               @RequestParam(name = "userId", required = false) Long userId,
+                                               @RequestParam(name = "cursor", required = false) String cursor,
+                                               @RequestParam(name = "size", defaultValue = "20") int size) {
+        Long authenticatedUserId = ((UserDTO) authentication.getPrincipal()).getId();
+        if (userId != null && !userId.equals(authenticatedUserId) && !hasAnyPermission(authentication, UPDATE_USER)) {
+            throw new AccessDeniedException("You don't have enough permission to view the events of other users.");
+        }
+        KeysetPage<UserEventDTO> events = eventService.getUserEvents(userId != null ? userId : authenticatedUserId, cursor, Math.max(1, Math.min(size, MAXIMUM_PAGE_SIZE)));
+        return ResponseEntity.ok().body(
+                HttpResponse.builder()
+                        .timeStamp(now().toString())
+                        .data(of("events", events))
+                        .message("User events retrieved.")
                         .httpStatus(HttpStatus.OK)
                         .statusCode(HttpStatus.OK.value())
                         .build());
@@ -164,15 +336,19 @@ public class UserResource {
                         .build());
     }
 
+    // The refresh token is rotated, the response carries the next one and the presented one can't be used again
     @GetMapping("refresh/token")
     public ResponseEntity<HttpResponse> refreshToken(HttpServletRequest request) {
-        if(isHeaderTokenValid(request)) {
-            String token = request.getHeader(HttpHeaders.AUTHORIZATION).substring(TOKEN_PREFIX.length());
-            UserDTO userDTO = userService.getUserByEmail(tokenProvider.getSubject(token, request));
+        VerifiedToken verifiedToken = getHeaderToken(request);
+        // The new tokens carry the current role of the user, so it isn't read from the user cache
+        UserDTO userDTO = isHeaderTokenValid(verifiedToken) ? userService.getUncachedUserByEmail(verifiedToken.getSubject()) : null;
+        UserPrincipal userPrincipal = userDTO != null ? getUserPrincipal(userDTO) : null;
+        String refreshToken = userPrincipal != null ? tokenProvider.rotateRefreshToken(verifiedToken, userPrincipal) : null;
+        if(refreshToken != null) {
             return ResponseEntity.ok().body(
                     HttpResponse.builder()
                             .timeStamp(LocalDateTime.now().toString())
-                            .data(Map.of("user", userDTO, "access_token", tokenProvider.createAccessToken(getUserPrincipal(userDTO)), "refresh_token", token))
+                            .data(Map.of("user", userDTO, "access_token", tokenProvider.createAccessToken(userPrincipal), "refresh_token", refreshToken))
                             .message("Token refreshed")
                             .httpStatus(HttpStatus.OK)
                             .statusCode(HttpStatus.OK.value())
@@ -188,27 +364,84 @@ public class UserResource {
                         .build());
     }
 
+    /**
+     * Revokes the access token of the request and, when it is sent, the refresh token of the same user.
+     * Both are rejected from then on, even though they haven't expired yet.
+     */
+    @PostMapping("/logout")
+    public ResponseEntity<HttpResponse> logout(@RequestBody(required = false) LogoutForm logoutForm) {
+        VerifiedToken accessToken = getHeaderToken(request);
+        if (accessToken == null) throw new ApiException("Access token is missing.");
+        tokenRevocationStore.revoke(accessToken);
+        if (logoutForm != null && StringUtils.isNotEmpty(logoutForm.getRefreshToken())) {
+            VerifiedToken refreshToken = tokenProvider.verifyToken(logoutForm.getRefreshToken(), request);
+            if (refreshToken.getType() != TokenType.REFRESH) throw new ApiException("The refresh token is not valid.");
+            if (!refreshToken.getSubject().equals(accessToken.getSubject())) throw new ApiException("The refresh token belongs to another user.");
+            tokenRevocationStore.revoke(refreshToken);
+            if (refreshToken.getFamilyId() != null) refreshTokenStore.revokeFamily(refreshToken.getFamilyId());
+        }
+        return ResponseEntity.ok().body(
+                HttpResponse.builder()
+                        .timeStamp(LocalDateTime.now().toString())
+                        .message("Logged out.")
+                        .httpStatus(HttpStatus.OK)
+                        .statusCode(HttpStatus.OK.value())
+                        .build());
+    }
+
+    /**
+     * Verifies a batch of tokens for other services, each result tells if the token is active and, when it is,
+     * who it belongs to, its authorities and when it expires. The results are in the order of the tokens.
+     * Only for callers with the READ:SYSTEM permission, the results expose the users and the authorities of the tokens.
+     */
+    @PostMapping("/introspect")
+    @HasAnyPermission(READ_SYSTEM)
+    public ResponseEntity<HttpResponse> introspect(@RequestBody @Valid IntrospectionForm introspectionForm) {
+        return ResponseEntity.ok().body(
+                HttpResponse.builder()
+                        .timeStamp(now().toString())
+                        .data(of("tokens", tokenIntrospector.introspect(introspectionForm.getTokens())))
+                        .message("Tokens introspected.")
+                        .httpStatus(HttpStatus.OK)
+                        .statusCode(HttpStatus.OK.value())
+                        .build());
+    }
+
+    // This method verifies the token in the request header once, it returns null when there is no bearer token to verify
+    private VerifiedToken getHeaderToken(HttpServletRequest request) {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        return header != null && header.startsWith(TOKEN_PREFIX) ? tokenProvider.verifyToken(header.substring(TOKEN_PREFIX.length()), request) : null;
+    }
+
     // This method checks if the token in the request header is valid with 3 checks mentioned below
-    private boolean isHeaderTokenValid(HttpServletRequest request) {
-        return request.getHeader(HttpHeaders.AUTHORIZATION) != null && // #1 Checks if the token exists in the Authorization Header
-                request.getHeader(HttpHeaders.AUTHORIZATION).startsWith(TOKEN_PREFIX) && // #2 Checks if the token starts with "Bearer "
-                tokenProvider.isTokenValid(tokenProvider.getSubject(request.getHeader(HttpHeaders.AUTHORIZATION).substring(TOKEN_PREFIX.length()), request), //  #3 Checks if the token is valid with tokenProvider.isTokenValid(email, token)
-                        request.getHeader(HttpHeaders.AUTHORIZATION).substring(TOKEN_PREFIX.length()));
+    private boolean isHeaderTokenValid(VerifiedToken verifiedToken) {
+        return verifiedToken != null && // #1 and #2 The token exists in the Authorization Header and starts with "Bearer "
+                tokenProvider.isRefreshTokenValid(verifiedToken); // #3 Checks if the already verified token is a refresh token with a subject and is not expired
     }
 
     private Authentication authenticateUser(String email, String password) {
+        // Attempts over the limit of the IP address or of the email are rejected before any database or BCrypt work
+        loginRateLimiter.checkLoginAllowed(request.getRemoteAddr(), email);
+        userEventWriter.publish(LOGIN_ATTEMPT, email);
         try {
             // unauthenticated() is a factory method inside UsernamePasswordAuthenticationToken class that returns the object of UsernamePasswordAuthenticationToken
             Authentication authentication = authenticationManager.authenticate(unauthenticated(email, password));
+            loginRateLimiter.loginSucceeded(email);
             return authentication;
         } catch (Exception exception) {
+            userEventWriter.publish(LOGIN_ATTEMPT_FAILURE, email);
+            // Too many wrong passwords lock the account, it gets unlocked automatically after the lock duration
+            if (exception instanceof BadCredentialsException && loginRateLimiter.loginFailed(email)) {
+                userService.lockUser(email, loginRateLimiter.getLockDuration());
+            }
             ExceptionUtils.processError(request, response, exception);
             throw new ApiException(exception.getMessage());
         }
     }
 
-    private UserDTO getAuthenticatedUser(Authentication authentication) {
-        return ((UserPrincipal) authentication.getPrincipal()).getUser();
+    // The principal set by CustomAuthorizationFilter is a UserDTO, authentication.getName() would return its toString()
+    private String getAuthenticatedEmail(Authentication authentication) {
+        return ((UserDTO) authentication.getPrincipal()).getEmail();
     }
 
     private ResponseEntity<HttpResponse> sendVerificationCode(UserDTO userDTO) {
@@ -223,22 +456,23 @@ public class UserResource {
                         .build());
     }
 
-    private ResponseEntity<HttpResponse> sendResponse(UserDTO userDTO) {
+    private ResponseEntity<HttpResponse> sendResponse(UserDTO userDTO, UserPrincipal userPrincipal) {
         return ResponseEntity.ok().body(
                 HttpResponse.builder()
                         .timeStamp(now().toString())
                         .data(of(
                                 "user", userDTO,
-                                "access_token", tokenProvider.createAccessToken(getUserPrincipal(userDTO)),
-                                "refresh_token", tokenProvider.createRefreshToken(getUserPrincipal(userDTO))))
+                                "access_token", loginMetrics.record(LoginMetrics.SIGNING, () -> tokenProvider.createAccessToken(userPrincipal)),
+                                "refresh_token", loginMetrics.record(LoginMetrics.SIGNING, () -> tokenProvider.createRefreshToken(userPrincipal))))
                         .message("Login successful.")
                         .httpStatus(HttpStatus.OK)
                         .statusCode(HttpStatus.OK.value())
                         .build());
     }
 
+    // The UserDTO already carries the role values, so the principal is built without loading the user again
     private UserPrincipal getUserPrincipal(UserDTO userDTO) {
-        return new UserPrincipal(UserDTOMapper.toUser(userService.getUserByEmail(userDTO.getEmail())), roleService.getRoleByUserId(userDTO.getId()));
+        return new UserPrincipal(UserDTOMapper.toUser(userDTO), Role.builder().name(userDTO.getRoleName()).permission(userDTO.getPermissions()).build());
     }
 
     private URI getUri() {
@@ -0,0 +1,55 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.rowmapper;
+
+import com.abenezermulugeta.securecapita.domain.Role;
+import com.abenezermulugeta.securecapita.domain.User;
+import com.abenezermulugeta.securecapita.domain.UserPrincipal;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Function;
+
+/**
+ * Maps a row of the user projection queries in UserQuery to a UserPrincipal, the role is resolved from the role id.
+ * The password is only mapped for the queries that select it, which are the ones used for authentication.
+ */
+public class UserPrincipalRowMapper implements RowMapper<UserPrincipal> {
+    private final Function<Long, Role> roleResolver;
+    private final boolean withPassword;
+
+    public UserPrincipalRowMapper(Function<Long, Role> roleResolver) {
+        this(roleResolver, false);
+    }
+
+    public UserPrincipalRowMapper(Function<Long, Role> roleResolver, boolean withPassword) {
+        this.roleResolver = roleResolver;
+        this.withPassword = withPassword;
+    }
+
+    @Override
+    public UserPrincipal mapRow(ResultSet resultSet, int rowNum) throws SQLException {
+        User user = User.builder()
+                .id(resultSet.getLong("id"))
+                .firstName(resultSet.getString("first_name"))
+                .lastName(resultSet.getString("last_name"))
+                .email(resultSet.getString("email"))
+                .password(withPassword ? resultSet.getString("password") : null)
+                .address(resultSet.getString("address"))
+                .phone(resultSet.getString("phone"))
+                .title(resultSet.getString("title"))
+                .bio(resultSet.getString("bio"))
+                .imageUrl(resultSet.getString("image_url"))
+                .enabled(resultSet.getBoolean("enabled"))
+                .isUsingMfa(resultSet.getBoolean("using_mfa"))
+                .isNotLocked(resultSet.getBoolean("non_locked"))
+                .createdAt(resultSet.getTimestamp("created_at").toLocalDateTime())
+                .build();
+        return new UserPrincipal(user, roleResolver.apply(resultSet.getLong("role_id")));
+    }
+}
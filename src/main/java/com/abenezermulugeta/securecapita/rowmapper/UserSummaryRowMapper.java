@@ -0,0 +1,39 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.rowmapper;
+
+import com.abenezermulugeta.securecapita.domain.Role;
+import com.abenezermulugeta.securecapita.dto.UserSummaryDTO;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.function.Function;
+
+public class UserSummaryRowMapper implements RowMapper<UserSummaryDTO> {
+    private final Function<Long, Role> roleResolver;
+
+    public UserSummaryRowMapper(Function<Long, Role> roleResolver) {
+        this.roleResolver = roleResolver;
+    }
+
+    @Override
+    public UserSummaryDTO mapRow(ResultSet resultSet, int rowNum) throws SQLException {
+        return UserSummaryDTO.builder()
+                .id(resultSet.getLong("id"))
+                .firstName(resultSet.getString("first_name"))
+                .lastName(resultSet.getString("last_name"))
+                .email(resultSet.getString("email"))
+                .imageUrl(resultSet.getString("image_url"))
+                .enabled(resultSet.getBoolean("enabled"))
+                .notLocked(resultSet.getBoolean("non_locked"))
+                .usingMfa(resultSet.getBoolean("using_mfa"))
+                .createdAt(resultSet.getTimestamp("created_at").toLocalDateTime())
+                .roleName(roleResolver.apply(resultSet.getLong("role_id")).getName())
+                .build();
+    }
+}
@@ -0,0 +1,91 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.security;
+
+import com.abenezermulugeta.securecapita.enumeration.Permission;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.security.authorization.AuthorizationDecision;
+import org.springframework.security.authorization.AuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Grants access when the authenticated user holds any of the required permissions, checked with a bit test on the
+ * Permission authorities instead of comparing authority strings.
+ * Used for the request rules in SecurityConfig (hasAnyPermission) and for methods annotated with @HasAnyPermission.
+ */
+public class PermissionAuthorizationManager<T> implements AuthorizationManager<T> {
+    private static final AuthorizationDecision GRANTED = new AuthorizationDecision(true);
+    private static final AuthorizationDecision DENIED = new AuthorizationDecision(false);
+    private final long requiredBits;
+
+    private PermissionAuthorizationManager(long requiredBits) {
+        this.requiredBits = requiredBits;
+    }
+
+    public static <T> PermissionAuthorizationManager<T> hasAnyPermission(Permission... permissions) {
+        return new PermissionAuthorizationManager<>(Permission.toBits(permissions));
+    }
+
+    public static boolean hasAnyPermission(Authentication authentication, Permission... permissions) {
+        return authentication != null && authentication.isAuthenticated() && hasAnyBit(authentication.getAuthorities(), Permission.toBits(permissions));
+    }
+
+    @Override
+    public AuthorizationDecision check(Supplier<Authentication> authentication, T object) {
+        Authentication current = authentication.get();
+        return current != null && current.isAuthenticated() && hasAnyBit(current.getAuthorities(), requiredBits) ? GRANTED : DENIED;
+    }
+
+    private static boolean hasAnyBit(Collection<? extends GrantedAuthority> authorities, long bits) {
+        if (authorities instanceof List<? extends GrantedAuthority> list) {
+            // Indexed loop, so checking a list of Permission authorities allocates nothing
+            for (int i = 0; i < list.size(); i++) {
+                if ((getBit(list.get(i)) & bits) != 0) return true;
+            }
+            return false;
+        }
+        for (GrantedAuthority authority : authorities) {
+            if ((getBit(authority) & bits) != 0) return true;
+        }
+        return false;
+    }
+
+    // Authorities that are not Permission constants (built from strings somewhere else) are looked up by name
+    private static long getBit(GrantedAuthority authority) {
+        if (authority instanceof Permission permission) return permission.getBit();
+        Permission permission = authority.getAuthority() == null ? null : Permission.fromAuthority(authority.getAuthority());
+        return permission == null ? 0 : permission.getBit();
+    }
+
+    /**
+     * Checks the permissions of the @HasAnyPermission annotation on the invoked method (or on its class),
+     * the required bits are computed once per method.
+     */
+    public static class MethodManager implements AuthorizationManager<MethodInvocation> {
+        private final Map<Method, Long> requiredBitsByMethod = new ConcurrentHashMap<>();
+
+        @Override
+        public AuthorizationDecision check(Supplier<Authentication> authentication, MethodInvocation methodInvocation) {
+            long bits = requiredBitsByMethod.computeIfAbsent(methodInvocation.getMethod(), method -> {
+                HasAnyPermission annotation = AnnotatedElementUtils.findMergedAnnotation(method, HasAnyPermission.class);
+                if (annotation == null) annotation = AnnotatedElementUtils.findMergedAnnotation(method.getDeclaringClass(), HasAnyPermission.class);
+                return annotation == null ? 0L : Permission.toBits(annotation.value());
+            });
+            Authentication current = authentication.get();
+            return current != null && current.isAuthenticated() && hasAnyBit(current.getAuthorities(), bits) ? GRANTED : DENIED;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.security;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.Date;
+
+import static com.abenezermulugeta.securecapita.query.TokenQuery.*;
+import static java.util.Map.of;
+
+/**
+ * Refresh token families. A login starts a family and every refresh replaces its token, so only the latest refresh
+ * token of a family can be used. Presenting a token that was already replaced means it was copied, the whole family
+ * is revoked and the holder of the latest token has to log in again as well.
+ * A refresh is one compare and set update on the primary key, the family is only read when that update fails.
+ * The near cache holds the families known to be revoked, so the replays that follow a revocation (a client retrying
+ * with its copied token) are rejected without any query.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RefreshTokenStore {
+    private final NamedParameterJdbcTemplate jdbc;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.refresh-tokens.near-cache.maximum-size:10000}")
+    private long maximumSize;
+
+    @Value("${application.refresh-tokens.near-cache.time-to-live:10m}")
+    private Duration timeToLive;
+
+    private Cache<String, Boolean> revokedFamilies;
+    private Counter reuses;
+
+    @PostConstruct
+    public void init() {
+        revokedFamilies = Caffeine.newBuilder().maximumSize(maximumSize).expireAfterWrite(timeToLive).recordStats().build();
+        CaffeineCacheMetrics.monitor(meterRegistry, revokedFamilies, "revoked-refresh-token-families");
+        reuses = Counter.builder("securecapita.refresh.token.reuse").description("Rotated refresh tokens that were presented again").register(meterRegistry);
+    }
+
+    public void startFamily(String familyId, Long userId, String tokenId, Date expiresAt) {
+        jdbc.update(INSERT_REFRESH_TOKEN_FAMILY_QUERY, new MapSqlParameterSource()
+                .addValue("familyId", familyId)
+                .addValue("userId", userId)
+                .addValue("tokenId", tokenId)
+                .addValue("expiresAt", new Timestamp(expiresAt.getTime())));
+    }
+
+    /**
+     * Replaces the token of the family with the new one, returns false when the token can't be used. Of two requests
+     * presenting the same token, only the first one rotates it, the second one is taken as a reuse.
+     */
+    public boolean rotate(String familyId, String tokenId, String newTokenId, Date expiresAt) {
+        if (revokedFamilies.getIfPresent(familyId) != null) return false;
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        int updated = jdbc.update(ROTATE_REFRESH_TOKEN_QUERY, new MapSqlParameterSource()
+                .addValue("familyId", familyId)
+                .addValue("tokenId", tokenId)
+                .addValue("newTokenId", newTokenId)
+                .addValue("expiresAt", new Timestamp(expiresAt.getTime()))
+                .addValue("now", now));
+        if (updated == 1) return true;
+        // The family is unknown, expired or revoked, or the token was already rotated
+        jdbc.query(SELECT_REFRESH_TOKEN_FAMILY_QUERY, of("familyId", familyId, "now", now), resultSet -> {
+            if (resultSet.getBoolean("revoked")) {
+                revokedFamilies.put(familyId, true);
+            } else if (!tokenId.equals(resultSet.getString("token_id"))) {
+                log.warn("Refresh token {} of family {} was used after it had been rotated, revoking the family", tokenId, familyId);
+                reuses.increment();
+                revokeFamily(familyId);
+            }
+        });
+        return false;
+    }
+
+    public void revokeFamily(String familyId) {
+        jdbc.update(REVOKE_REFRESH_TOKEN_FAMILY_QUERY, of("familyId", familyId));
+        revokedFamilies.put(familyId, true);
+    }
+
+    @Scheduled(fixedDelayString = "${application.refresh-tokens.purge-interval:PT1H}", initialDelayString = "${application.refresh-tokens.purge-interval:PT1H}")
+    public void purge() {
+        int purged = jdbc.update(DELETE_EXPIRED_REFRESH_TOKEN_FAMILIES_QUERY, of("now", new Timestamp(System.currentTimeMillis())));
+        log.debug("Purged {} expired refresh token families", purged);
+    }
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.security;
+
+import com.abenezermulugeta.securecapita.domain.VerifiedToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.abenezermulugeta.securecapita.provider.TokenProvider.JWT_REFRESH_TOKEN_EXPIRATION_TIME;
+import static com.abenezermulugeta.securecapita.query.TokenQuery.*;
+import static java.util.Map.of;
+
+/**
+ * Revoked tokens, by token id (jti) or by user for every token issued before a point in time. Both are persisted and
+ * mirrored in memory, so checking a token never queries the database: the user check is a map lookup and the token
+ * id is first tested against a Bloom filter, only its rare positives are confirmed against the exact set. A revocation
+ * is kept until the tokens it covers would have expired anyway, then the purge removes it from the table and the memory.
+ * Revocations made by other instances are picked up by the sync, until then those instances still accept the token.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TokenRevocationStore {
+    private final NamedParameterJdbcTemplate jdbc;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.token-revocation.expected-revocations:100000}")
+    private int expectedRevocations;
+
+    @Value("${application.token-revocation.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    // Token id to the expiry of the token, the exact set behind the Bloom filter
+    private final Map<String, Instant> revokedTokens = new ConcurrentHashMap<>();
+    // User id to the time before which the tokens of the user are revoked
+    private final Map<Long, Instant> revokedBefore = new ConcurrentHashMap<>();
+    private volatile BloomFilter bloomFilter;
+    @Value("${application.token-revocation.sync-overlap:PT1M}")
+    private Duration syncOverlap;
+
+    // The latest created_at of RevokedTokens and updated_at of UserTokenRevocations loaded (by the clock of the
+    // database), null until the first sync
+    private Instant lastLoadedAt;
+    private Instant lastUserRevocationLoadedAt;
+    private Counter falsePositives;
+
+    @PostConstruct
+    public void init() {
+        bloomFilter = new BloomFilter(expectedRevocations, falsePositiveRate);
+        falsePositives = Counter.builder("securecapita.token.revocation.false.positives").description("Token ids that passed the Bloom filter without being revoked").register(meterRegistry);
+        Gauge.builder("securecapita.token.revocations", revokedTokens, Map::size).description("Revoked token ids held in memory").register(meterRegistry);
+        Gauge.builder("securecapita.token.user.revocations", revokedBefore, Map::size).description("Users whose earlier tokens are revoked").register(meterRegistry);
+        sync();
+        log.info("Loaded {} revoked tokens and {} user token revocations", revokedTokens.size(), revokedBefore.size());
+    }
+
+    public boolean isRevoked(VerifiedToken verifiedToken) {
+        if (verifiedToken.getUserId() != null && verifiedToken.getIssuedAt() != null) {
+            Instant before = revokedBefore.get(verifiedToken.getUserId());
+            if (before != null && verifiedToken.getIssuedAt().toInstant().isBefore(before)) return true;
+        }
+        // Tokens issued before the token id was added can only be revoked through their user
+        String tokenId = verifiedToken.getTokenId();
+        if (tokenId == null || !bloomFilter.mightContain(tokenId)) return false;
+        if (revokedTokens.containsKey(tokenId)) return true;
+        falsePositives.increment();
+        return false;
+    }
+
+    // Returns true when this call revoked the token, false when it has no token id or was already revoked (by any instance)
+    public boolean revoke(VerifiedToken verifiedToken) {
+        if (verifiedToken.getTokenId() == null) {
+            log.warn("Token of {} has no token id and can't be revoked on its own", verifiedToken.getSubject());
+            return false;
+        }
+        Instant expiresAt = verifiedToken.getExpiresAt().toInstant();
+        int inserted = jdbc.update(INSERT_REVOKED_TOKEN_QUERY, new MapSqlParameterSource()
+                .addValue("tokenId", verifiedToken.getTokenId())
+                .addValue("userId", verifiedToken.getUserId())
+                .addValue("expiresAt", Timestamp.from(expiresAt)));
+        addRevokedToken(verifiedToken.getTokenId(), expiresAt);
+        log.info("Revoked token {} of {}", verifiedToken.getTokenId(), verifiedToken.getSubject());
+        return inserted == 1;
+    }
+
+    /**
+     * Revokes every token issued to the user until now. The issued at claim only has a precision of seconds, so the
+     * revocation is rounded up to the next second, tokens issued within the same second are revoked as well.
+     */
+    public void revokeAll(Long userId) {
+        Instant before = Instant.now().truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+        // No token issued before the revocation outlives the longest token lifetime
+        Instant expiresAt = before.plusMillis(JWT_REFRESH_TOKEN_EXPIRATION_TIME);
+        jdbc.update(UPSERT_USER_TOKEN_REVOCATION_QUERY, of("userId", userId, "revokedBefore", Timestamp.from(before), "expiresAt", Timestamp.from(expiresAt)));
+        revokedBefore.merge(userId, before, (current, next) -> next.isAfter(current) ? next : current);
+        log.info("Revoked the tokens of user id: {} issued before {}", userId, before);
+    }
+
+    /**
+     * Picks up the revocations made by other instances. Auto increment ids are assigned on insert but can commit out of
+     * order, so the sync reads the rows created since the latest one loaded minus the overlap: a row that commits up to
+     * the overlap after a later one is still loaded, the rows read twice are simply added again. User revocations are
+     * read the same way by updated_at, since a later revocation of the same user moves revoked_before on the same row.
+     */
+    @Scheduled(fixedDelayString = "${application.token-revocation.sync-interval:PT10S}", initialDelayString = "${application.token-revocation.sync-interval:PT10S}")
+    public void sync() {
+        Timestamp now = Timestamp.from(Instant.now());
+        Instant createdFrom;
+        Instant updatedFrom;
+        synchronized (this) {
+            createdFrom = lastLoadedAt == null ? Instant.EPOCH : lastLoadedAt.minus(syncOverlap);
+            updatedFrom = lastUserRevocationLoadedAt == null ? Instant.EPOCH : lastUserRevocationLoadedAt.minus(syncOverlap);
+        }
+        jdbc.query(SELECT_REVOKED_TOKENS_QUERY, of("createdFrom", Timestamp.from(createdFrom), "now", now), resultSet -> {
+            addRevokedToken(resultSet.getString("token_id"), resultSet.getTimestamp("expires_at").toInstant());
+            Instant createdAt = resultSet.getTimestamp("created_at").toInstant();
+            synchronized (this) {
+                if (lastLoadedAt == null || createdAt.isAfter(lastLoadedAt)) lastLoadedAt = createdAt;
+            }
+        });
+        Map<Long, Instant> loaded = new HashMap<>();
+        jdbc.query(SELECT_USER_TOKEN_REVOCATIONS_QUERY, of("updatedFrom", Timestamp.from(updatedFrom), "now", now), resultSet -> {
+            loaded.put(resultSet.getLong("user_id"), resultSet.getTimestamp("revoked_before").toInstant());
+            Instant updatedAt = resultSet.getTimestamp("updated_at").toInstant();
+            synchronized (this) {
+                if (lastUserRevocationLoadedAt == null || updatedAt.isAfter(lastUserRevocationLoadedAt)) lastUserRevocationLoadedAt = updatedAt;
+            }
+        });
+        loaded.forEach((userId, before) -> revokedBefore.merge(userId, before, (current, next) -> next.isAfter(current) ? next : current));
+    }
+
+    // Every instance runs the purge, the deletes are idempotent
+    @Scheduled(fixedDelayString = "${application.token-revocation.purge-interval:PT10M}", initialDelayString = "${application.token-revocation.purge-interval:PT10M}")
+    public void purge() {
+        Instant now = Instant.now();
+        int tokens = jdbc.update(DELETE_EXPIRED_REVOKED_TOKENS_QUERY, of("now", Timestamp.from(now)));
+        int users = jdbc.update(DELETE_EXPIRED_USER_TOKEN_REVOCATIONS_QUERY, of("now", Timestamp.from(now)));
+        revokedTokens.values().removeIf(expiresAt -> !expiresAt.isAfter(now));
+        // A user revocation is only needed for as long as the refresh tokens it covers
+        revokedBefore.values().removeIf(before -> !before.plusMillis(JWT_REFRESH_TOKEN_EXPIRATION_TIME).isAfter(now));
+        // Entries can't be removed from a Bloom filter, it is rebuilt from what is left
+        rebuildBloomFilter();
+        log.debug("Purged {} expired revoked tokens and {} user token revocations", tokens, users);
+    }
+
+    // Synchronized with the rebuild, so a token can't be added to a filter that is about to be replaced
+    private synchronized void addRevokedToken(String tokenId, Instant expiresAt) {
+        if (!expiresAt.isAfter(Instant.now())) return;
+        revokedTokens.put(tokenId, expiresAt);
+        if (revokedTokens.size() > bloomFilter.getExpectedInsertions()) {
+            rebuildBloomFilter();
+        } else {
+            bloomFilter.put(tokenId);
+        }
+    }
+
+    // The filter is filled before it is published, concurrent checks keep using the previous one until then
+    private synchronized void rebuildBloomFilter() {
+        BloomFilter rebuilt = new BloomFilter(Math.max(expectedRevocations, revokedTokens.size() * 2), falsePositiveRate);
+        revokedTokens.keySet().forEach(rebuilt::put);
+        bloomFilter = rebuilt;
+    }
+}
@@ -0,0 +1,14 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.service;
+
+import com.abenezermulugeta.securecapita.dto.KeysetPage;
+import com.abenezermulugeta.securecapita.dto.UserEventDTO;
+
+public interface EventService {
+    KeysetPage<UserEventDTO> getUserEvents(Long userId, String cursor, int pageSize);
+}
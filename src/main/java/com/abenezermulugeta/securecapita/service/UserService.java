@@ -7,11 +7,22 @@
 package com.abenezermulugeta.securecapita.service;
 
 import com.abenezermulugeta.securecapita.domain.User;
+import com.abenezermulugeta.securecapita.dto.ImportReport;
+import com.abenezermulugeta.securecapita.dto.KeysetPage;
 import com.abenezermulugeta.securecapita.dto.UserDTO;
+import com.abenezermulugeta.securecapita.dto.UserSummaryDTO;
+import com.abenezermulugeta.securecapita.enumeration.ExportFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 
 public interface UserService {
     UserDTO createUser(User user);
     UserDTO getUserByEmail(String email);
+    UserDTO getUncachedUserByEmail(String email);
     void sendVerificationCode(UserDTO userDto);
     UserDTO verifyCode(String email, String code);
     void sendPasswordResetLink(String email);
@@ -20,4 +31,22 @@ public interface UserService {
     void resetPassword(String key, String password, String confirmPassword);
 
     UserDTO verifyAccountKey(String key);
+
+    Map<String, Long> countUsersByPasswordStrength();
+
+    void lockUser(String email, Duration lockDuration);
+
+    void unlockExpiredUsers();
+
+    KeysetPage<UserSummaryDTO> getUsers(String cursor, int pageSize, Boolean enabled, Boolean notLocked, Boolean usingMfa);
+
+    UserDTO getUser(Long id);
+
+    UserDTO updateUser(User user);
+
+    Boolean deleteUser(Long id);
+
+    ImportReport importUsers(List<User> users);
+
+    long exportUsers(ExportFormat format, OutputStream outputStream) throws IOException;
 }
@@ -0,0 +1,46 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.service.implementation;
+
+import com.abenezermulugeta.securecapita.dto.KeysetPage;
+import com.abenezermulugeta.securecapita.dto.UserEventDTO;
+import com.abenezermulugeta.securecapita.exception.ApiException;
+import com.abenezermulugeta.securecapita.repository.EventRepository;
+import com.abenezermulugeta.securecapita.service.EventService;
+import com.abenezermulugeta.securecapita.utils.CursorUtils;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+@Service
+@RequiredArgsConstructor
+public class EventServiceImpl implements EventService {
+    private final EventRepository eventRepository;
+
+    @Override
+    public KeysetPage<UserEventDTO> getUserEvents(Long userId, String cursor, int pageSize) {
+        LocalDateTime createdAt = null;
+        Long id = null;
+        if (cursor != null && !cursor.isBlank()) {
+            String[] values = CursorUtils.decode(cursor, 2);
+            try {
+                createdAt = LocalDateTime.parse(values[0]);
+                id = Long.valueOf(values[1]);
+            } catch (DateTimeParseException | NumberFormatException exception) {
+                throw new ApiException("The page cursor is not valid.");
+            }
+        }
+        // One more row than the page size tells if there is a next page without a count query
+        List<UserEventDTO> events = eventRepository.getUserEvents(userId, createdAt, id, pageSize + 1);
+        if (events.size() <= pageSize) return new KeysetPage<>(events, null);
+        UserEventDTO last = events.get(pageSize - 1);
+        return new KeysetPage<>(events.subList(0, pageSize), CursorUtils.encode(last.getCreatedAt(), last.getId()));
+    }
+}
@@ -8,14 +8,31 @@ package com.abenezermulugeta.securecapita.service.implementation;
 
 import com.abenezermulugeta.securecapita.domain.Role;
 import com.abenezermulugeta.securecapita.domain.User;
+import com.abenezermulugeta.securecapita.dto.ImportReport;
+import com.abenezermulugeta.securecapita.dto.KeysetPage;
 import com.abenezermulugeta.securecapita.dto.UserDTO;
+import com.abenezermulugeta.securecapita.dto.UserSummaryDTO;
 import com.abenezermulugeta.securecapita.dtomapper.UserDTOMapper;
+import com.abenezermulugeta.securecapita.enumeration.ExportFormat;
+import com.abenezermulugeta.securecapita.exception.ApiException;
+import com.abenezermulugeta.securecapita.export.UserExportWriter;
 import com.abenezermulugeta.securecapita.repository.RoleRepository;
 import com.abenezermulugeta.securecapita.repository.UserRepository;
 import com.abenezermulugeta.securecapita.service.UserService;
+import com.abenezermulugeta.securecapita.utils.CursorUtils;
 import lombok.RequiredArgsConstructor;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static com.abenezermulugeta.securecapita.enumeration.RoleType.ROLE_USER;
+
 @Service
 @RequiredArgsConstructor
 public class UserServiceImpl implements UserService {
@@ -24,12 +41,19 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public UserDTO createUser(User user) {
-        return mapToUserDTO(userRepository.create(user));
+        // A new user always has ROLE_USER, the role comes from the role catalog instead of reading the user back
+        return UserDTOMapper.fromUser(userRepository.create(user), roleRepository.get(roleRepository.getRoleIdByName(ROLE_USER.name())));
     }
 
     @Override
     public UserDTO getUserByEmail(String email) {
-        return mapToUserDTO(userRepository.getUserByEmail(email));
+        return userRepository.getUserPrincipalByEmail(email).getUser();
+    }
+
+    // For the lookups that grant access, the user cache can hold a role or a state changed on another instance
+    @Override
+    public UserDTO getUncachedUserByEmail(String email) {
+        return userRepository.getUncachedUserPrincipalByEmail(email).getUser();
     }
 
     @Override
@@ -39,7 +63,7 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public UserDTO verifyCode(String email, String code) {
-        return mapToUserDTO(userRepository.verifyCode(email, code));
+        return userRepository.verifyCode(email, code).getUser();
     }
 
     @Override
@@ -49,7 +73,7 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public UserDTO verifyPasswordKey(String key) {
-        return mapToUserDTO(userRepository.verifyPasswordKey(key));
+        return userRepository.verifyPasswordKey(key).getUser();
     }
 
     @Override
@@ -59,10 +83,72 @@ public class UserServiceImpl implements UserService {
 
     @Override
     public UserDTO verifyAccountKey(String key) {
-        return mapToUserDTO(userRepository.verifyAccountKey(key));
+        return userRepository.verifyAccountKey(key).getUser();
+    }
+
+    @Override
+    public Map<String, Long> countUsersByPasswordStrength() {
+        return userRepository.countUsersByPasswordStrength();
+    }
+
+    @Override
+    public void lockUser(String email, Duration lockDuration) {
+        userRepository.lockUser(email, new Date(System.currentTimeMillis() + lockDuration.toMillis()));
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${application.login-rate-limit.unlock-interval:PT1M}")
+    public void unlockExpiredUsers() {
+        userRepository.unlockExpiredUsers();
+    }
+
+    @Override
+    public KeysetPage<UserSummaryDTO> getUsers(String cursor, int pageSize, Boolean enabled, Boolean notLocked, Boolean usingMfa) {
+        Long afterId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                afterId = Long.valueOf(CursorUtils.decode(cursor, 1)[0]);
+            } catch (NumberFormatException exception) {
+                throw new ApiException("The page cursor is not valid.");
+            }
+        }
+        // One more row than the page size tells if there is a next page without a count query
+        List<UserSummaryDTO> users = userRepository.list(afterId, pageSize + 1, enabled, notLocked, usingMfa);
+        if (users.size() <= pageSize) return new KeysetPage<>(users, null);
+        return new KeysetPage<>(users.subList(0, pageSize), CursorUtils.encode(users.get(pageSize - 1).getId()));
+    }
+
+    @Override
+    public UserDTO getUser(Long id) {
+        return userRepository.getUserPrincipalById(id).getUser();
+    }
+
+    @Override
+    public UserDTO updateUser(User user) {
+        return mapToUserDTO(userRepository.update(user));
+    }
+
+    @Override
+    public Boolean deleteUser(Long id) {
+        return userRepository.delete(id);
+    }
+
+    @Override
+    public ImportReport importUsers(List<User> users) {
+        return userRepository.importUsers(users);
+    }
+
+    // Returns the number of exported users, the output stream is closed once every row is written
+    @Override
+    public long exportUsers(ExportFormat format, OutputStream outputStream) throws IOException {
+        try (UserExportWriter userExportWriter = new UserExportWriter(format, outputStream)) {
+            userRepository.exportUsers(userExportWriter);
+            return userExportWriter.getRows();
+        }
     }
 
+    // The given user is kept as is (it can be the state before an update), only the role is resolved through the user cache
     private UserDTO mapToUserDTO(User user) {
-        return UserDTOMapper.fromUser(user, roleRepository.getRoleByUserId(user.getId()));
+        return UserDTOMapper.fromUser(user, userRepository.getUserPrincipalById(user.getId()).getRole());
     }
 }
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.sms;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+import org.springframework.stereotype.Component;
+
+/**
+ * Local stand in for an SMS provider, the message is only logged. The messages hold verification codes, so the digits
+ * of the body and all but the last digits of the phone are masked, and the sender refuses to start outside of the dev
+ * and test profiles.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "application.sms.sender", havingValue = "log", matchIfMissing = true)
+public class LoggingSmsSender implements SmsSender {
+    private static final int VISIBLE_PHONE_DIGITS = 2;
+
+    public LoggingSmsSender(Environment environment) {
+        if (!environment.acceptsProfiles(Profiles.of("dev", "test"))) {
+            throw new IllegalStateException("The 'log' SMS sender is only for the dev and test profiles, set application.sms.sender to 'twilio'.");
+        }
+    }
+
+    @Override
+    public void send(String phone, String body) {
+        log.info("SMS to {}: {}", mask(phone), body.replaceAll("\\d", "*"));
+    }
+
+    private static String mask(String phone) {
+        int visibleFrom = Math.max(0, phone.length() - VISIBLE_PHONE_DIGITS);
+        return "*".repeat(visibleFrom) + phone.substring(visibleFrom);
+    }
+}
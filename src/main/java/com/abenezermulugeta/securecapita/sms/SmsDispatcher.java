@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.sms;
+
+import com.abenezermulugeta.securecapita.domain.SmsMessage;
+import com.abenezermulugeta.securecapita.enumeration.OutboxStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.abenezermulugeta.securecapita.query.SmsQuery.*;
+import static java.util.Map.of;
+
+/**
+ * Sends the messages of the SmsOutbox table with the SmsSender on a fixed size pool. Every poll claims at most as many
+ * due messages as the queue of the pool has room for: they are locked with SKIP LOCKED, so other instances claim other
+ * messages, and leased, so a message claimed by an instance that stops before sending it is claimed again.
+ * A sent message is deleted, a failed one is retried with exponential backoff until the maximum number of attempts,
+ * then it is marked FAILED and its body (the verification code) is cleared.
+ *
+ * Metrics: 'executor.*' tagged name=sms, 'securecapita.sms.sent', 'securecapita.sms.retried' and 'securecapita.sms.failed'.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SmsDispatcher {
+    private static final String POOL_NAME = "sms";
+    private static final int MAXIMUM_ERROR_LENGTH = 255;
+    private final NamedParameterJdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final SmsSender smsSender;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${application.sms.dispatcher.pool-size:4}")
+    private int poolSize;
+
+    @Value("${application.sms.dispatcher.queue-capacity:100}")
+    private int queueCapacity;
+
+    // How long a claimed message is reserved for the instance that claimed it, it has to be longer than a send can take
+    @Value("${application.sms.dispatcher.lease:1m}")
+    private Duration lease;
+
+    @Value("${application.sms.dispatcher.maximum-attempts:6}")
+    private int maximumAttempts;
+
+    @Value("${application.sms.dispatcher.initial-backoff:5s}")
+    private Duration initialBackoff;
+
+    @Value("${application.sms.dispatcher.maximum-backoff:10m}")
+    private Duration maximumBackoff;
+
+    private ThreadPoolExecutor executor;
+    private Counter sentCounter;
+    private Counter retriedCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, POOL_NAME + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        new ExecutorServiceMetrics(executor, POOL_NAME, Tags.empty()).bindTo(meterRegistry);
+        sentCounter = Counter.builder("securecapita.sms.sent").register(meterRegistry);
+        retriedCounter = Counter.builder("securecapita.sms.retried").register(meterRegistry);
+        failedCounter = Counter.builder("securecapita.sms.failed").description("Messages given up after the maximum number of attempts").register(meterRegistry);
+        log.info("SMS dispatcher sender: {}, pool size: {}, maximum attempts: {}", smsSender.getClass().getSimpleName(), poolSize, maximumAttempts);
+    }
+
+    @Scheduled(fixedDelayString = "${application.sms.dispatcher.poll-interval:PT1S}")
+    public void dispatch() {
+        int limit = executor.getQueue().remainingCapacity();
+        if (limit == 0) return;
+        for (SmsMessage message : claim(limit)) {
+            try {
+                executor.execute(() -> send(message));
+            } catch (RejectedExecutionException exception) {
+                // Only when the pool is shutting down, the message is claimed again once its lease runs out
+                log.warn("SMS {} was not dispatched: {}", message.getId(), exception.getMessage());
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    private List<SmsMessage> claim(int limit) {
+        Instant now = Instant.now();
+        return transactionTemplate.execute(status -> {
+            List<SmsMessage> messages = jdbc.query(SELECT_DUE_SMS_QUERY, of("now", Timestamp.from(now), "limit", limit), (resultSet, rowNum) ->
+                    SmsMessage.builder()
+                            .id(resultSet.getLong("id"))
+                            .phone(resultSet.getString("phone"))
+                            .body(resultSet.getString("body"))
+                            .attempts(resultSet.getInt("attempts"))
+                            .build());
+            if (!messages.isEmpty()) {
+                jdbc.update(CLAIM_SMS_QUERY, of("ids", messages.stream().map(SmsMessage::getId).toList(), "leaseUntil", Timestamp.from(now.plus(lease))));
+            }
+            return messages;
+        });
+    }
+
+    private void send(SmsMessage message) {
+        try {
+            smsSender.send(message.getPhone(), message.getBody());
+            // The message holds a verification code, it isn't kept once it is sent
+            jdbc.update(DELETE_SMS_QUERY, of("id", message.getId()));
+            sentCounter.increment();
+        } catch (Exception exception) {
+            failed(message, exception);
+        }
+    }
+
+    private void failed(SmsMessage message, Exception exception) {
+        int attempts = message.getAttempts() + 1;
+        boolean givenUp = attempts >= maximumAttempts;
+        try {
+            MapSqlParameterSource parameters = new MapSqlParameterSource()
+                    .addValue("id", message.getId())
+                    .addValue("attempts", attempts)
+                    .addValue("lastError", StringUtils.abbreviate(String.valueOf(exception.getMessage()), MAXIMUM_ERROR_LENGTH));
+            if (givenUp) {
+                jdbc.update(GIVE_UP_SMS_QUERY, parameters);
+            } else {
+                jdbc.update(UPDATE_FAILED_SMS_QUERY, parameters
+                        .addValue("status", OutboxStatus.PENDING.name())
+                        .addValue("nextAttemptAt", Timestamp.from(Instant.now().plus(getBackoff(attempts)))));
+            }
+        } catch (Exception updateException) {
+            // The message is claimed again once its lease runs out
+            log.error(updateException.getMessage());
+        }
+        if (givenUp) {
+            failedCounter.increment();
+            log.error("SMS {} failed after {} attempts: {}", message.getId(), attempts, exception.getMessage());
+        } else {
+            retriedCounter.increment();
+            log.warn("SMS {} failed on attempt {}, retrying: {}", message.getId(), attempts, exception.getMessage());
+        }
+    }
+
+    // Doubles with every attempt up to the maximum, the jitter keeps messages that failed together from being retried together
+    private Duration getBackoff(int attempts) {
+        long backoff = Math.min(initialBackoff.toMillis() << Math.min(attempts - 1, 20), maximumBackoff.toMillis());
+        return Duration.ofMillis(backoff + ThreadLocalRandom.current().nextLong(backoff / 5 + 1));
+    }
+}
@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.sms;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+
+import static com.abenezermulugeta.securecapita.query.SmsQuery.INSERT_SMS_QUERY;
+import static java.util.Map.of;
+
+/**
+ * Writes SMS messages to the SmsOutbox table instead of sending them. The message has to be written in the transaction
+ * of the change it belongs to, so it is sent if and only if that change is committed, and the request never waits on
+ * the SMS provider. The SmsDispatcher sends it afterwards.
+ */
+@Component
+@RequiredArgsConstructor
+public class SmsOutbox {
+    private final NamedParameterJdbcTemplate jdbc;
+
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(String phone, String body) {
+        jdbc.update(INSERT_SMS_QUERY, of("phone", phone, "body", body, "now", new Timestamp(System.currentTimeMillis())));
+    }
+}
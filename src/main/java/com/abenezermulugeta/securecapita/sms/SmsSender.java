@@ -0,0 +1,16 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.sms;
+
+/**
+ * Sends one SMS message, it is only called by the SmsDispatcher. The implementation is chosen with application.sms.sender,
+ * 'twilio' for TwilioSmsSender and 'log' (the default, dev and test profiles only) for LoggingSmsSender.
+ * An exception fails the attempt, the message is retried later.
+ */
+public interface SmsSender {
+    void send(String phone, String body) throws Exception;
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.sms;
+
+import com.twilio.Twilio;
+import com.twilio.rest.api.v2010.account.Message;
+import com.twilio.type.PhoneNumber;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import static com.twilio.rest.api.v2010.account.Message.creator;
+
+// Sends the messages through the Twilio API, the client is initialized once with the account credentials
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "application.sms.sender", havingValue = "twilio")
+public class TwilioSmsSender implements SmsSender {
+    private final PhoneNumber fromPhoneNumber;
+    private final String countryCode;
+
+    public TwilioSmsSender(@Value("${application.sms.twilio.account-sid}") String accountSid,
+                           @Value("${application.sms.twilio.auth-token}") String authToken,
+                           @Value("${application.sms.twilio.from-phone-number}") String fromPhoneNumber,
+                           @Value("${application.sms.twilio.country-code:+1}") String countryCode) {
+        Twilio.init(accountSid, authToken);
+        this.fromPhoneNumber = new PhoneNumber(fromPhoneNumber);
+        this.countryCode = countryCode;
+    }
+
+    @Override
+    public void send(String phone, String body) {
+        // Phone numbers of users are stored without the country code
+        String toPhoneNumber = phone.startsWith("+") ? phone : countryCode + phone;
+        Message message = creator(new PhoneNumber(toPhoneNumber), fromPhoneNumber, body).create();
+        log.debug("SMS {} sent with status {}", message.getSid(), message.getStatus());
+    }
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.Duration;
+
+@Slf4j
+public class BCryptUtils {
+    private static final String CALIBRATION_PASSWORD = "calibration-password";
+    // Cheap hashes that get the BCrypt code compiled by the JIT before anything is measured
+    private static final int WARM_UP_STRENGTH = 6;
+    private static final int WARM_UP_ITERATIONS = 50;
+    private static final int MEASURED_ITERATIONS = 3;
+
+    /**
+     * Picks the highest BCrypt strength (cost) whose hash time stays within the target duration on this hardware, never
+     * below the minimum strength. Only the minimum strength is measured, every additional round of cost doubles the time.
+     */
+    public static int calibrate(Duration targetDuration, int minimumStrength, int maximumStrength) {
+        long hashTime = measure(minimumStrength);
+        int strength = minimumStrength;
+        while (strength < maximumStrength && hashTime * 2 <= targetDuration.toNanos()) {
+            hashTime *= 2;
+            strength++;
+        }
+        log.info("BCrypt strength calibrated to {} (about {} ms per hash, target {} ms)", strength, hashTime / 1_000_000, targetDuration.toMillis());
+        return strength;
+    }
+
+    // Reads the cost from a hash like $2a$12$..., returns -1 when the value is not a BCrypt hash
+    public static int getStrength(String encodedPassword) {
+        if (encodedPassword == null || encodedPassword.length() < 7 || encodedPassword.charAt(0) != '$' || encodedPassword.charAt(6) != '$') return -1;
+        try {
+            return Integer.parseInt(encodedPassword.substring(4, 6));
+        } catch (NumberFormatException exception) {
+            return -1;
+        }
+    }
+
+    // The fastest of a few runs after the warm-up, so neither the interpreter nor a pause of the JVM during startup lowers the strength
+    private static long measure(int strength) {
+        BCryptPasswordEncoder warmUpEncoder = new BCryptPasswordEncoder(WARM_UP_STRENGTH);
+        for (int run = 0; run < WARM_UP_ITERATIONS; run++) warmUpEncoder.encode(CALIBRATION_PASSWORD);
+        BCryptPasswordEncoder encoder = new BCryptPasswordEncoder(strength);
+        long fastest = Long.MAX_VALUE;
+        for (int run = 0; run < MEASURED_ITERATIONS; run++) {
+            long start = System.nanoTime();
+            encoder.encode(CALIBRATION_PASSWORD);
+            fastest = Math.min(fastest, System.nanoTime() - start);
+        }
+        return fastest;
+    }
+}
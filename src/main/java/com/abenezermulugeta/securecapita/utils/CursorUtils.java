@@ -0,0 +1,40 @@
+/*******************************************************************************
+ * @author Abenezer Sefinew
+ * @version 1.0
+ * @since 06/09/2023
+ */
+
+package com.abenezermulugeta.securecapita.utils;
+
+import com.abenezermulugeta.securecapita.exception.ApiException;
+
+import java.util.Base64;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encodes the sort key of the last row of a page into an opaque cursor for keyset pagination.
+ * The values are joined with '|' and base64 (URL safe) encoded, so they can be passed in a query parameter as is.
+ */
+public class CursorUtils {
+    private static final String SEPARATOR = "|";
+
+    public static String encode(Object... values) {
+        StringBuilder cursor = new StringBuilder();
+        for (Object value : values) {
+            if (!cursor.isEmpty()) cursor.append(SEPARATOR);
+            cursor.append(value);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.toString().getBytes(UTF_8));
+    }
+
+    public static String[] decode(String cursor, int numberOfValues) {
+        try {
+            String[] values = new String(Base64.getUrlDecoder().decode(cursor), UTF_8).split("\\" + SEPARATOR, -1);
+            if (values.length != numberOfValues) throw new IllegalArgumentException();
+            return values;
+        } catch (IllegalArgumentException exception) {
+            throw new ApiException("The page cursor is not valid.");
+        }
+    }
+}
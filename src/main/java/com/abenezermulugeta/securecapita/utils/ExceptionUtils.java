@@ -8,6 +8,8 @@ package com.abenezermulugeta.securecapita.utils;
 
 import com.abenezermulugeta.securecapita.domain.HttpResponse;
 import com.abenezermulugeta.securecapita.exception.ApiException;
+import com.abenezermulugeta.securecapita.exception.ServerBusyException;
+import com.abenezermulugeta.securecapita.exception.TooManyRequestsException;
 import com.auth0.jwt.exceptions.InvalidClaimException;
 import com.auth0.jwt.exceptions.TokenExpiredException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -32,6 +34,12 @@ public class ExceptionUtils {
                 exception instanceof InvalidClaimException || exception instanceof TokenExpiredException || exception instanceof BadCredentialsException) {
             HttpResponse httpResponse = getHttpResponse(response, exception.getMessage(), BAD_REQUEST);
             writeResponse(response, httpResponse);
+        } else if (exception instanceof ServerBusyException) {
+            HttpResponse httpResponse = getHttpResponse(response, exception.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+            writeResponse(response, httpResponse);
+        } else if (exception instanceof TooManyRequestsException) {
+            HttpResponse httpResponse = getHttpResponse(response, exception.getMessage(), HttpStatus.TOO_MANY_REQUESTS);
+            writeResponse(response, httpResponse);
         } else {
             HttpResponse httpResponse = getHttpResponse(response, "An error occurred. Please try again.", HttpStatus.INTERNAL_SERVER_ERROR);
             writeResponse(response, httpResponse);
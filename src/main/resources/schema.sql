@@ -19,6 +19,7 @@ CREATE TABLE Users
     bio VARCHAR(255) DEFAULT NULL,
     enabled BOOLEAN DEFAULT FALSE,
     non_locked BOOLEAN DEFAULT TRUE,
+    locked_until DATETIME DEFAULT NULL,
     using_mfa BOOLEAN DEFAULT FALSE,
     created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
     image_url VARCHAR(255) DEFAULT 'https://cdn-icons-png.flaticon.com/512/149/149071.png',
@@ -35,6 +36,13 @@ CREATE TABLE Roles
     CONSTRAINT UQ_Roles_Name UNIQUE (name)
 );
 
+# New users get ROLE_USER, READ:SYSTEM (the actuator endpoints and the token introspection) is only for ROLE_SYSADMIN
+INSERT INTO Roles (name, permission) VALUES
+    ('ROLE_USER', 'READ:USER, READ:CUSTOMER'),
+    ('ROLE_MANAGER', 'READ:USER, READ:CUSTOMER, UPDATE:USER, UPDATE:CUSTOMER'),
+    ('ROLE_ADMIN', 'READ:USER, READ:CUSTOMER, CREATE:USER, CREATE:CUSTOMER, UPDATE:USER, UPDATE:CUSTOMER'),
+    ('ROLE_SYSADMIN', 'READ:USER, READ:CUSTOMER, CREATE:USER, CREATE:CUSTOMER, UPDATE:USER, UPDATE:CUSTOMER, DELETE:USER, DELETE:CUSTOMER, READ:SYSTEM');
+
 # Table UserRoles
 DROP TABLE IF EXISTS UserRoles;
 CREATE TABLE UserRoles
@@ -69,6 +77,18 @@ CREATE TABLE Events
     CONSTRAINT UQ_Events_Type UNIQUE (type)
 );
 
+# Has to match the EventType enum, user events are inserted by the event type
+INSERT INTO Events (type, description) VALUES
+    ('LOGIN_ATTEMPT', 'You tried to log in'),
+    ('LOGIN_ATTEMPT_FAILURE', 'You tried to log in and you failed'),
+    ('LOGIN_ATTEMPT_SUCCESS', 'You tried to log in and you succeeded'),
+    ('PROFILE_UPDATE', 'You updated your profile information'),
+    ('PROFILE_PICTURE_UPDATE', 'You updated your profile picture'),
+    ('ROLE_UPDATE', 'You updated your role and permissions'),
+    ('ACCOUNT_SETTINGS_UPDATE', 'You updated your account settings'),
+    ('PASSWORD_UPDATE', 'You updated your password'),
+    ('MFA_UPDATE', 'You updated your MFA settings');
+
 # Table UserEvents
 DROP TABLE IF EXISTS UserEvents;
 CREATE TABLE UserEvents
@@ -80,7 +100,8 @@ CREATE TABLE UserEvents
     ip_address VARCHAR(100) DEFAULT NULL,
     created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (user_id) REFERENCES Users (id) ON DELETE CASCADE ON UPDATE CASCADE,
-    FOREIGN KEY (event_id) REFERENCES Events (id) ON DELETE RESTRICT ON UPDATE CASCADE
+    FOREIGN KEY (event_id) REFERENCES Events (id) ON DELETE RESTRICT ON UPDATE CASCADE,
+    INDEX IX_UserEvents_User_Id_Created_At_Id (user_id, created_at, id)
 );
 
 # Table AccountVerifications
@@ -119,4 +140,77 @@ CREATE TABLE TwoFactorVerifications
     FOREIGN KEY (user_id) REFERENCES Users (id) ON DELETE CASCADE ON UPDATE CASCADE,
     CONSTRAINT UQ_TwoFactorVerifications_User_Id UNIQUE (user_id),
     CONSTRAINT UQ_TwoFactorVerifications_Code UNIQUE (code)
-);
\ No newline at end of file
+);
+
+# Table RevokedTokens, a row is kept until the revoked token would have expired
+# user_id has no foreign key, the revocation has to outlive a deleted user
+DROP TABLE IF EXISTS RevokedTokens;
+CREATE TABLE RevokedTokens
+(
+    id BIGINT UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    token_id VARCHAR(36) NOT NULL,
+    user_id BIGINT UNSIGNED DEFAULT NULL,
+    expires_at DATETIME NOT NULL,
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT UQ_RevokedTokens_Token_Id UNIQUE (token_id),
+    INDEX IX_RevokedTokens_Expires_At (expires_at),
+    INDEX IX_RevokedTokens_Created_At (created_at)
+);
+
+# Table UserTokenRevocations, every token of the user issued before revoked_before is rejected
+DROP TABLE IF EXISTS UserTokenRevocations;
+CREATE TABLE UserTokenRevocations
+(
+    id BIGINT UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    user_id BIGINT UNSIGNED NOT NULL,
+    revoked_before DATETIME NOT NULL,
+    expires_at DATETIME NOT NULL,
+    updated_at DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP,
+    CONSTRAINT UQ_UserTokenRevocations_User_Id UNIQUE (user_id),
+    INDEX IX_UserTokenRevocations_Updated_At (updated_at)
+);
+
+# Table RefreshTokenFamilies, one row per login holding the only refresh token of the family that can still be used
+DROP TABLE IF EXISTS RefreshTokenFamilies;
+CREATE TABLE RefreshTokenFamilies
+(
+    family_id CHAR(36) CHARACTER SET ascii NOT NULL PRIMARY KEY,
+    user_id BIGINT UNSIGNED NOT NULL,
+    token_id CHAR(36) CHARACTER SET ascii NOT NULL,
+    revoked BOOLEAN DEFAULT FALSE,
+    expires_at DATETIME NOT NULL,
+    FOREIGN KEY (user_id) REFERENCES Users (id) ON DELETE CASCADE ON UPDATE CASCADE,
+    INDEX IX_RefreshTokenFamilies_Expires_At (expires_at)
+);
+
+# Table SmsOutbox, messages are written in the transaction that creates them and sent by the SmsDispatcher
+DROP TABLE IF EXISTS SmsOutbox;
+CREATE TABLE SmsOutbox
+(
+    id BIGINT UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    phone VARCHAR(30) NOT NULL,
+    body VARCHAR(500) NOT NULL,
+    status VARCHAR(10) NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at DATETIME NOT NULL,
+    last_error VARCHAR(255) DEFAULT NULL,
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    INDEX IX_SmsOutbox_Status_Next_Attempt_At (status, next_attempt_at)
+);
+
+# Table EmailOutbox, the values of the email template are written in the transaction that creates them and the email is sent by the EmailDispatcher
+DROP TABLE IF EXISTS EmailOutbox;
+CREATE TABLE EmailOutbox
+(
+    id BIGINT UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    recipient VARCHAR(100) NOT NULL,
+    first_name VARCHAR(50) NOT NULL,
+    type VARCHAR(10) NOT NULL,
+    url VARCHAR(255) NOT NULL,
+    status VARCHAR(10) NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at DATETIME NOT NULL,
+    last_error VARCHAR(255) DEFAULT NULL,
+    created_at DATETIME DEFAULT CURRENT_TIMESTAMP,
+    INDEX IX_EmailOutbox_Status_Next_Attempt_At (status, next_attempt_at)
+);
@@ -0,0 +1,74 @@
+package com.abenezermulugeta.securecapita.benchmark;
+
+import com.abenezermulugeta.securecapita.enumeration.Permission;
+import com.abenezermulugeta.securecapita.security.PermissionAuthorizationManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.authorization.AuthorityAuthorizationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning the permissions of an access token into authorities and checking a DELETE:USER rule, per request.
+ * <ul>
+ *     <li>stringAuthorities: the path before the Permission registry, a SimpleGrantedAuthority per authority name of the
+ *     token checked by hasAnyAuthority.</li>
+ *     <li>permissionNames: the authority names of the token mapped to Permission bits and checked with a bit test.</li>
+ *     <li>permissionBits: the compact perms claim, the shared authority list of the bits checked with a bit test.</li>
+ * </ul>
+ * The check is a denied one (the role holds no DELETE permission), so every authority is compared.
+ * Run like TokenVerificationBenchmark, with PermissionCheckBenchmark as the benchmark name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermissionCheckBenchmark {
+	private static final String[] CLAIMS = { "READ:USER", "READ:CUSTOMER", "UPDATE:USER", "UPDATE:CUSTOMER", "CREATE:USER", "CREATE:CUSTOMER" };
+	private final AuthorityAuthorizationManager<Object> stringManager = AuthorityAuthorizationManager.hasAnyAuthority(Permission.DELETE_USER.getAuthority());
+	private final PermissionAuthorizationManager<Object> permissionManager = PermissionAuthorizationManager.hasAnyPermission(Permission.DELETE_USER);
+	private long bits;
+
+	@Setup
+	public void setUp() {
+		bits = Permission.toBits(Arrays.asList(CLAIMS));
+	}
+
+	@Benchmark
+	public boolean stringAuthorities() {
+		List<GrantedAuthority> authorities = Arrays.stream(CLAIMS).map(SimpleGrantedAuthority::new).map(GrantedAuthority.class::cast).toList();
+		return stringManager.check(() -> getAuthentication(authorities), null).isGranted();
+	}
+
+	@Benchmark
+	public boolean permissionNames() {
+		List<GrantedAuthority> authorities = Permission.toAuthorities(Permission.toBits(Arrays.asList(CLAIMS)));
+		return permissionManager.check(() -> getAuthentication(authorities), null).isGranted();
+	}
+
+	@Benchmark
+	public boolean permissionBits() {
+		List<GrantedAuthority> authorities = Permission.toAuthorities(bits);
+		return permissionManager.check(() -> getAuthentication(authorities), null).isGranted();
+	}
+
+	private Authentication getAuthentication(List<GrantedAuthority> authorities) {
+		return UsernamePasswordAuthenticationToken.authenticated("benchmark@securecapita.com", null, authorities);
+	}
+}
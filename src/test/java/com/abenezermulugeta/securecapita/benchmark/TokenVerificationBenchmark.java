@@ -0,0 +1,82 @@
+package com.abenezermulugeta.securecapita.benchmark;
+
+import com.abenezermulugeta.securecapita.configuration.JwtKeyProperties;
+import com.abenezermulugeta.securecapita.domain.Role;
+import com.abenezermulugeta.securecapita.domain.User;
+import com.abenezermulugeta.securecapita.domain.UserPrincipal;
+import com.abenezermulugeta.securecapita.domain.VerifiedToken;
+import com.abenezermulugeta.securecapita.provider.TokenProvider;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.JWTVerifier;
+import com.auth0.jwt.algorithms.Algorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The token work of one authenticated request in the CustomAuthorizationFilter.
+ * <ul>
+ *     <li>threeVerifiersPerRequest: the filter before the verified token, which built a new HMAC512 verifier and verified
+ *     the token for the subject, for the expiry and for the authorities.</li>
+ *     <li>verifyOnce: TokenProvider.verifyToken, one verification with the verifier built on startup.</li>
+ * </ul>
+ * Run with: mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt -Dmdep.includeScope=test &&
+ * java -cp target/test-classes:target/classes:$(cat target/classpath.txt) org.openjdk.jmh.Main TokenVerificationBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenVerificationBenchmark {
+	private static final String SECRET = "benchmark-secret-that-is-long-enough-for-hmac-512-signing-keys-0123456789";
+	private static final String ISSUER_COMPANY = "ANI_TECH_LLC";
+
+	private TokenProvider tokenProvider;
+	private String accessToken;
+
+	@Setup
+	public void setUp() {
+		JwtKeyProperties jwtKeyProperties = new JwtKeyProperties();
+		jwtKeyProperties.setSecret(SECRET);
+		// Verifying doesn't use the user service nor the stores
+		tokenProvider = new TokenProvider(null, null, null, jwtKeyProperties);
+		tokenProvider.init();
+		User user = User.builder().id(1L).email("benchmark@securecapita.com").build();
+		Role role = Role.builder().name("ROLE_ADMIN").permission("READ:USER,READ:CUSTOMER,UPDATE:USER,UPDATE:CUSTOMER,CREATE:USER,CREATE:CUSTOMER").build();
+		accessToken = tokenProvider.createAccessToken(new UserPrincipal(user, role));
+	}
+
+	@Benchmark
+	public List<GrantedAuthority> threeVerifiersPerRequest() {
+		String subject = getVerifier().verify(accessToken).getSubject();
+		boolean valid = subject != null && !getVerifier().verify(accessToken).getExpiresAt().before(new Date());
+		String[] claims = getVerifier().verify(accessToken).getClaim("authorities").asArray(String.class);
+		List<GrantedAuthority> authorities = claims == null ? List.of() : Arrays.stream(claims).map(SimpleGrantedAuthority::new).map(GrantedAuthority.class::cast).toList();
+		return valid ? authorities : List.of();
+	}
+
+	@Benchmark
+	public VerifiedToken verifyOnce() {
+		return tokenProvider.verifyToken(accessToken);
+	}
+
+	private JWTVerifier getVerifier() {
+		return JWT.require(Algorithm.HMAC512(SECRET)).withIssuer(ISSUER_COMPANY).build();
+	}
+}
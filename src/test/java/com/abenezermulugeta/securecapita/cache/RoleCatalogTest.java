@@ -0,0 +1,68 @@
+package com.abenezermulugeta.securecapita.cache;
+
+import com.abenezermulugeta.securecapita.domain.Role;
+import com.abenezermulugeta.securecapita.rowmapper.RoleRowMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.util.List;
+
+import static com.abenezermulugeta.securecapita.query.RoleQuery.SELECT_ROLES_QUERY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RoleCatalogTest {
+	private static final Role USER = new Role(1L, "ROLE_USER", "READ:USER");
+	private static final Role MANAGER = new Role(2L, "ROLE_MANAGER", "READ:USER,UPDATE:USER");
+	@Mock
+	private NamedParameterJdbcTemplate jdbc;
+	@InjectMocks
+	private RoleCatalog roleCatalog;
+
+	@Test
+	void rolesAreLoadedOnceAndThenServedFromMemory() {
+		when(jdbc.query(eq(SELECT_ROLES_QUERY), any(RoleRowMapper.class))).thenReturn(List.of(MANAGER, USER));
+
+		assertEquals(USER, roleCatalog.getById(1L));
+		assertEquals(MANAGER, roleCatalog.getByName("ROLE_MANAGER"));
+		assertEquals(List.of(USER, MANAGER), roleCatalog.getAll());
+		verify(jdbc, times(1)).query(eq(SELECT_ROLES_QUERY), any(RoleRowMapper.class));
+	}
+
+	@Test
+	void unknownRoleIdReloadsTheCatalog() {
+		when(jdbc.query(eq(SELECT_ROLES_QUERY), any(RoleRowMapper.class))).thenReturn(List.of(USER), List.of(USER, MANAGER));
+		roleCatalog.getById(1L);
+
+		// The role was created on another instance after the catalog was loaded
+		assertEquals(MANAGER, roleCatalog.getById(2L));
+		assertEquals(MANAGER, roleCatalog.getByName("ROLE_MANAGER"));
+		verify(jdbc, times(2)).query(eq(SELECT_ROLES_QUERY), any(RoleRowMapper.class));
+	}
+
+	@Test
+	void roleIdUnknownAfterTheReloadIsNotFound() {
+		when(jdbc.query(eq(SELECT_ROLES_QUERY), any(RoleRowMapper.class))).thenReturn(List.of(USER));
+
+		assertNull(roleCatalog.getById(3L));
+		assertEquals(USER, roleCatalog.getById(1L));
+	}
+
+	@Test
+	void unknownRoleNameDoesNotReloadTheCatalog() {
+		when(jdbc.query(eq(SELECT_ROLES_QUERY), any(RoleRowMapper.class))).thenReturn(List.of(USER));
+
+		assertNull(roleCatalog.getByName("ROLE_ADMIN"));
+		verify(jdbc, times(1)).query(eq(SELECT_ROLES_QUERY), any(RoleRowMapper.class));
+	}
+}
@@ -0,0 +1,97 @@
+package com.abenezermulugeta.securecapita.cache;
+
+import com.abenezermulugeta.securecapita.configuration.JwtKeyProperties;
+import com.abenezermulugeta.securecapita.domain.Role;
+import com.abenezermulugeta.securecapita.domain.User;
+import com.abenezermulugeta.securecapita.domain.UserPrincipal;
+import com.abenezermulugeta.securecapita.domain.VerifiedToken;
+import com.abenezermulugeta.securecapita.provider.TokenProvider;
+import com.abenezermulugeta.securecapita.security.RefreshTokenStore;
+import com.abenezermulugeta.securecapita.security.TokenRevocationStore;
+import com.abenezermulugeta.securecapita.service.UserService;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class VerifiedTokenCacheTest {
+	@Mock
+	private TokenRevocationStore tokenRevocationStore;
+	private final AtomicInteger verifications = new AtomicInteger();
+	private VerifiedTokenCache verifiedTokenCache;
+
+	@BeforeEach
+	void setUp() {
+		verifiedTokenCache = new VerifiedTokenCache(new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(verifiedTokenCache, "enabled", true);
+		ReflectionTestUtils.setField(verifiedTokenCache, "maximumSize", 100L);
+		verifiedTokenCache.init();
+	}
+
+	@Test
+	void entryExpiresWhenTheTokenDoes() throws InterruptedException {
+		Function<String, VerifiedToken> verifier = countVerifications(token -> VerifiedToken.builder().expiresAt(new Date(System.currentTimeMillis() + 100)).build());
+
+		verifiedTokenCache.get("token", verifier);
+		verifiedTokenCache.get("token", verifier);
+		assertEquals(1, verifications.get());
+		Thread.sleep(150);
+		verifiedTokenCache.get("token", verifier);
+
+		assertEquals(2, verifications.get());
+	}
+
+	@Test
+	void failedVerificationIsNotCached() {
+		Function<String, VerifiedToken> failingVerifier = countVerifications(token -> { throw new JWTVerificationException("The token is not valid"); });
+		Function<String, VerifiedToken> verifier = countVerifications(token -> VerifiedToken.builder().expiresAt(new Date(System.currentTimeMillis() + 60_000)).build());
+
+		assertThrows(JWTVerificationException.class, () -> verifiedTokenCache.get("token", failingVerifier));
+		assertThrows(JWTVerificationException.class, () -> verifiedTokenCache.get("token", failingVerifier));
+		verifiedTokenCache.get("token", verifier);
+
+		assertEquals(3, verifications.get());
+	}
+
+	@Test
+	void revokedTokenIsRejectedOnACacheHit() {
+		JwtKeyProperties jwtKeyProperties = new JwtKeyProperties();
+		jwtKeyProperties.setSecret("verified-token-cache-test-secret-that-is-long-enough-for-hmac-512-signing-keys");
+		TokenProvider tokenProvider = new TokenProvider(null, tokenRevocationStore, null, jwtKeyProperties);
+		tokenProvider.init();
+		UserPrincipal userPrincipal = new UserPrincipal(User.builder().id(1L).email("user@securecapita.com").build(), Role.builder().name("ROLE_USER").permission("READ:USER").build());
+		String accessToken = tokenProvider.createAccessToken(userPrincipal);
+		Function<String, VerifiedToken> verifier = countVerifications(tokenProvider::verifyToken);
+
+		assertTrue(tokenProvider.isAccessTokenValid(verifiedTokenCache.get(accessToken, verifier)));
+		when(tokenRevocationStore.isRevoked(any())).thenReturn(true);
+		VerifiedToken cachedToken = verifiedTokenCache.get(accessToken, verifier);
+
+		assertEquals(1, verifications.get());
+		assertEquals(accessToken, cachedToken.getToken());
+		assertFalse(tokenProvider.isAccessTokenValid(cachedToken));
+	}
+
+	private Function<String, VerifiedToken> countVerifications(Function<String, VerifiedToken> verifier) {
+		return token -> {
+			verifications.incrementAndGet();
+			return verifier.apply(token);
+		};
+	}
+}
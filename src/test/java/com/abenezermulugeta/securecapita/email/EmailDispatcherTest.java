@@ -0,0 +1,169 @@
+package com.abenezermulugeta.securecapita.email;
+
+import com.abenezermulugeta.securecapita.domain.EmailMessage;
+import com.abenezermulugeta.securecapita.enumeration.VerificationType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.abenezermulugeta.securecapita.query.EmailQuery.DELETE_EMAILS_QUERY;
+import static com.abenezermulugeta.securecapita.query.EmailQuery.SELECT_DUE_EMAILS_QUERY;
+import static com.abenezermulugeta.securecapita.query.EmailQuery.UPDATE_FAILED_EMAIL_QUERY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EmailDispatcherTest {
+	private static final int MAXIMUM_ATTEMPTS = 6;
+
+	@Mock
+	private NamedParameterJdbcTemplate jdbc;
+	@Mock
+	private TransactionTemplate transactionTemplate;
+	@Mock
+	private JavaMailSender mailSender;
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private EmailDispatcher emailDispatcher;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		EmailTemplates emailTemplates = new EmailTemplates();
+		emailTemplates.init();
+		emailDispatcher = new EmailDispatcher(jdbc, transactionTemplate, mailSender, emailTemplates, meterRegistry);
+		ReflectionTestUtils.setField(emailDispatcher, "from", "noreply@securecapita.com");
+		ReflectionTestUtils.setField(emailDispatcher, "poolSize", 1);
+		ReflectionTestUtils.setField(emailDispatcher, "batchSize", 50);
+		ReflectionTestUtils.setField(emailDispatcher, "lease", Duration.ofMinutes(5));
+		ReflectionTestUtils.setField(emailDispatcher, "maximumAttempts", MAXIMUM_ATTEMPTS);
+		ReflectionTestUtils.setField(emailDispatcher, "initialBackoff", Duration.ofSeconds(30));
+		ReflectionTestUtils.setField(emailDispatcher, "maximumBackoff", Duration.ofMinutes(30));
+		emailDispatcher.init();
+	}
+
+	@Test
+	void sentBatchIsRenderedAndDeleted() throws InterruptedException {
+		claims(getEmail(1L, 0), getEmail(2L, 0));
+		List<SimpleMailMessage> messages = new CopyOnWriteArrayList<>();
+		doAnswer(invocation -> {
+			Arrays.stream(invocation.getArguments()).map(SimpleMailMessage.class::cast).forEach(messages::add);
+			return null;
+		}).when(mailSender).send((SimpleMailMessage[]) any());
+
+		emailDispatcher.dispatch();
+		emailDispatcher.shutdown();
+
+		// The batch is sent with a single call over one connection
+		verify(mailSender).send((SimpleMailMessage[]) any());
+		assertEquals(2, messages.size());
+		SimpleMailMessage message = messages.stream().filter(mailMessage -> mailMessage.getTo()[0].equals("user1@securecapita.com")).findFirst().orElseThrow();
+		assertEquals("SecureCapita - Account Verification", message.getSubject());
+		assertTrue(message.getText().startsWith("Hello User 1,"));
+		assertEquals(Set.of(1L, 2L), getDeletedIds());
+		verify(jdbc, never()).update(eq(UPDATE_FAILED_EMAIL_QUERY), any(MapSqlParameterSource.class));
+		assertEquals(2, meterRegistry.counter("securecapita.email.sent").count());
+	}
+
+	@Test
+	void onlyTheMessagesReportedByTheMailSenderAreRetried() throws InterruptedException {
+		claims(getEmail(1L, 0), getEmail(2L, 0), getEmail(3L, 0));
+		doAnswer(invocation -> {
+			SimpleMailMessage failedMessage = Arrays.stream(invocation.getArguments()).map(SimpleMailMessage.class::cast)
+					.filter(message -> message.getTo()[0].equals("user2@securecapita.com")).findFirst().orElseThrow();
+			throw new MailSendException(Map.of(failedMessage, new IllegalStateException("Mailbox unavailable")));
+		}).when(mailSender).send((SimpleMailMessage[]) any());
+
+		emailDispatcher.dispatch();
+		emailDispatcher.shutdown();
+
+		assertEquals(Set.of(1L, 3L), getDeletedIds());
+		MapSqlParameterSource parameters = getFailedUpdate();
+		assertEquals(2L, parameters.getValue("id"));
+		assertEquals("PENDING", parameters.getValue("status"));
+		assertEquals(1, parameters.getValue("attempts"));
+		assertEquals("Mailbox unavailable", parameters.getValue("lastError"));
+		assertEquals(2, meterRegistry.counter("securecapita.email.sent").count());
+		assertEquals(1, meterRegistry.counter("securecapita.email.retried").count());
+	}
+
+	@Test
+	void wholeBatchIsRetriedWhenNoMessageIsReported() throws InterruptedException {
+		claims(getEmail(1L, 0), getEmail(2L, 0));
+		doThrow(new MailSendException("Couldn't connect to host")).when(mailSender).send((SimpleMailMessage[]) any());
+
+		emailDispatcher.dispatch();
+		emailDispatcher.shutdown();
+
+		verify(jdbc, never()).update(eq(DELETE_EMAILS_QUERY), anyMap());
+		ArgumentCaptor<MapSqlParameterSource> parameters = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+		verify(jdbc, times(2)).update(eq(UPDATE_FAILED_EMAIL_QUERY), parameters.capture());
+		assertEquals(Set.of(1L, 2L), Set.copyOf(parameters.getAllValues().stream().map(parameter -> parameter.getValue("id")).toList()));
+		assertEquals(2, meterRegistry.counter("securecapita.email.retried").count());
+	}
+
+	@Test
+	void emailIsGivenUpAfterTheMaximumNumberOfAttempts() throws InterruptedException {
+		claims(getEmail(1L, MAXIMUM_ATTEMPTS - 1));
+		doThrow(new MailSendException("Couldn't connect to host")).when(mailSender).send((SimpleMailMessage[]) any());
+
+		emailDispatcher.dispatch();
+		emailDispatcher.shutdown();
+
+		assertEquals("FAILED", getFailedUpdate().getValue("status"));
+		assertEquals(1, meterRegistry.counter("securecapita.email.failed").count());
+	}
+
+	private void claims(EmailMessage... emails) {
+		when(transactionTemplate.execute(any())).thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+		doReturn(List.of(emails)).when(jdbc).query(eq(SELECT_DUE_EMAILS_QUERY), anyMap(), any(RowMapper.class));
+	}
+
+	private Set<Object> getDeletedIds() {
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<Map<String, Object>> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(jdbc).update(eq(DELETE_EMAILS_QUERY), parameters.capture());
+		return Set.copyOf((Collection<?>) parameters.getValue().get("ids"));
+	}
+
+	private MapSqlParameterSource getFailedUpdate() {
+		ArgumentCaptor<MapSqlParameterSource> parameters = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+		verify(jdbc).update(eq(UPDATE_FAILED_EMAIL_QUERY), parameters.capture());
+		return parameters.getValue();
+	}
+
+	private EmailMessage getEmail(Long id, int attempts) {
+		return EmailMessage.builder().id(id).recipient("user" + id + "@securecapita.com").firstName("User " + id)
+				.type(VerificationType.ACCOUNT).url("http://localhost:8080/users/verify/account/" + id).attempts(attempts).build();
+	}
+}
@@ -0,0 +1,56 @@
+package com.abenezermulugeta.securecapita.email;
+
+import com.abenezermulugeta.securecapita.enumeration.VerificationType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmailTemplatesTest {
+	private static final String URL = "http://localhost:8080/users/verify/account/4f1c";
+	private EmailTemplates emailTemplates;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		emailTemplates = new EmailTemplates();
+		emailTemplates.init();
+	}
+
+	@Test
+	void accountTemplateIsRenderedWithTheNameAndTheUrl() {
+		String text = emailTemplates.render(VerificationType.ACCOUNT, "Abenezer", URL);
+
+		assertTrue(text.startsWith("Hello Abenezer,"));
+		assertTrue(text.contains("verify your account.\n\n" + URL + "\n"));
+		assertFalse(text.contains("${"));
+		assertEquals("SecureCapita - Account Verification", emailTemplates.getSubject(VerificationType.ACCOUNT));
+	}
+
+	@Test
+	void passwordTemplateIsRenderedWithTheNameAndTheUrl() {
+		String text = emailTemplates.render(VerificationType.PASSWORD, "Abenezer", URL);
+
+		assertTrue(text.startsWith("Hello Abenezer,"));
+		assertTrue(text.contains("choose a new password.\n\n" + URL + "\n"));
+		assertFalse(text.contains("${"));
+		assertEquals("SecureCapita - Reset Password Request", emailTemplates.getSubject(VerificationType.PASSWORD));
+	}
+
+	@Test
+	void missingValueRendersEmpty() {
+		assertTrue(emailTemplates.render(VerificationType.ACCOUNT, null, URL).startsWith("Hello ,"));
+	}
+
+	@Test
+	void placeholderWithoutAValueRendersEmptyAndAnUnterminatedOneIsKept() {
+		EmailTemplates.Template template = EmailTemplates.Template.compile("${firstName}: ${unknown}${url} ${url");
+
+		assertEquals("Abenezer: " + URL + " ${url", template.render(Map.of("firstName", "Abenezer", "url", URL)));
+		assertEquals(": ", EmailTemplates.Template.compile("${firstName}: ").render(Map.of()));
+	}
+}
@@ -0,0 +1,35 @@
+package com.abenezermulugeta.securecapita.enumeration;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.core.GrantedAuthority;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PermissionTest {
+
+	@Test
+	void permissionListRoundTripsThroughBits() {
+		long bits = Permission.toBits("READ:USER, DELETE:CUSTOMER,UNKNOWN:PERMISSION,");
+
+		assertEquals(Permission.toBits(Permission.READ_USER, Permission.DELETE_CUSTOMER), bits);
+		assertEquals(List.of(Permission.READ_USER, Permission.DELETE_CUSTOMER), Permission.toAuthorities(bits));
+	}
+
+	@Test
+	void authorityListsAreShared() {
+		List<GrantedAuthority> authorities = Permission.toAuthorities(Permission.toBits("READ:USER,UPDATE:USER"));
+
+		assertSame(authorities, Permission.toAuthorities(Permission.toBits(List.of("UPDATE:USER", "READ:USER"))));
+	}
+
+	@Test
+	void bitsOutsideTheRegistryAreIgnored() {
+		long unknownBit = 1L << Permission.values().length;
+
+		assertEquals(List.of(Permission.READ_USER), Permission.toAuthorities(Permission.READ_USER.getBit() | unknownBit));
+		assertEquals(List.of(), Permission.toAuthorities(0));
+	}
+}
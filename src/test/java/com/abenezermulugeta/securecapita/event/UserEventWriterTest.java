@@ -0,0 +1,146 @@
+package com.abenezermulugeta.securecapita.event;
+
+import com.abenezermulugeta.securecapita.enumeration.EventType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.abenezermulugeta.securecapita.query.EventQuery.INSERT_USER_EVENT_BY_USER_ID_QUERY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+
+@ExtendWith(MockitoExtension.class)
+class UserEventWriterTest {
+	@Mock
+	private NamedParameterJdbcTemplate jdbc;
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final List<List<Object>> batches = new CopyOnWriteArrayList<>();
+	private final CountDownLatch writing = new CountDownLatch(1);
+	private final CountDownLatch release = new CountDownLatch(1);
+	private UserEventWriter userEventWriter;
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		release.countDown();
+		if (userEventWriter != null) userEventWriter.shutdown();
+	}
+
+	@Test
+	void dropOldestReplacesTheOldestQueuedEventWhenTheQueueIsFull() throws InterruptedException {
+		blockFirstWrite();
+		userEventWriter = getUserEventWriter(2, 1, Duration.ofMillis(50), UserEventWriter.OverflowPolicy.DROP_OLDEST);
+
+		userEventWriter.publish(EventType.LOGIN_ATTEMPT, 1L);
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+		for (long userId = 2; userId <= 4; userId++) userEventWriter.publish(EventType.LOGIN_ATTEMPT, userId);
+		release.countDown();
+		awaitWritten(3);
+
+		assertEquals(1, meterRegistry.counter("securecapita.user.events.dropped").count());
+		assertEquals(List.of(1L, 3L, 4L), getWrittenUserIds());
+	}
+
+	@Test
+	void blockWaitsForRoomInsteadOfDropping() throws InterruptedException {
+		blockFirstWrite();
+		userEventWriter = getUserEventWriter(1, 1, Duration.ofMillis(50), UserEventWriter.OverflowPolicy.BLOCK);
+
+		userEventWriter.publish(EventType.LOGIN_ATTEMPT, 1L);
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+		userEventWriter.publish(EventType.LOGIN_ATTEMPT, 2L);
+		Thread publisher = new Thread(() -> userEventWriter.publish(EventType.LOGIN_ATTEMPT, 3L));
+		publisher.start();
+		publisher.join(200);
+		assertTrue(publisher.isAlive());
+		release.countDown();
+		publisher.join(5000);
+		assertFalse(publisher.isAlive());
+		awaitWritten(3);
+
+		assertEquals(0, meterRegistry.counter("securecapita.user.events.dropped").count());
+		assertEquals(List.of(1L, 2L, 3L), getWrittenUserIds());
+	}
+
+	@Test
+	void fullBatchIsWrittenWithOneInsert() throws InterruptedException {
+		recordWrites();
+		userEventWriter = getUserEventWriter(100, 3, Duration.ofHours(1), UserEventWriter.OverflowPolicy.DROP_OLDEST);
+
+		for (long userId = 1; userId <= 3; userId++) userEventWriter.publish(EventType.LOGIN_ATTEMPT, userId);
+		awaitWritten(3);
+
+		assertEquals(List.of(List.of(1L, 2L, 3L)), batches);
+	}
+
+	@Test
+	void partialBatchIsWrittenAfterTheFlushInterval() throws InterruptedException {
+		recordWrites();
+		userEventWriter = getUserEventWriter(100, 500, Duration.ofMillis(50), UserEventWriter.OverflowPolicy.DROP_OLDEST);
+
+		userEventWriter.publish(EventType.LOGIN_ATTEMPT, 1L);
+
+		assertTrue(writing.await(5, TimeUnit.SECONDS));
+		assertEquals(List.of(List.of(1L)), batches);
+	}
+
+	private UserEventWriter getUserEventWriter(int queueCapacity, int batchSize, Duration flushInterval, UserEventWriter.OverflowPolicy overflowPolicy) {
+		UserEventWriter userEventWriter = new UserEventWriter(jdbc, meterRegistry);
+		ReflectionTestUtils.setField(userEventWriter, "queueCapacity", queueCapacity);
+		ReflectionTestUtils.setField(userEventWriter, "batchSize", batchSize);
+		ReflectionTestUtils.setField(userEventWriter, "flushInterval", flushInterval);
+		ReflectionTestUtils.setField(userEventWriter, "overflowPolicy", overflowPolicy);
+		userEventWriter.init();
+		return userEventWriter;
+	}
+
+	// Shutting down while the writer is still inside an insert would interrupt it
+	private void awaitWritten(int count) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (meterRegistry.counter("securecapita.user.events.written").count() < count && System.currentTimeMillis() < deadline) Thread.sleep(10);
+		assertEquals(count, meterRegistry.counter("securecapita.user.events.written").count());
+	}
+
+	private void recordWrites() {
+		doAnswer(invocation -> {
+			batches.add(getUserIds(invocation.getArgument(1)));
+			writing.countDown();
+			return new int[0];
+		}).when(jdbc).batchUpdate(eq(INSERT_USER_EVENT_BY_USER_ID_QUERY), any(SqlParameterSource[].class));
+	}
+
+	// The first batch insert waits until it is released, so the queue fills up behind it
+	private void blockFirstWrite() {
+		doAnswer(invocation -> {
+			boolean first = batches.isEmpty();
+			batches.add(getUserIds(invocation.getArgument(1)));
+			writing.countDown();
+			if (first) release.await(5, TimeUnit.SECONDS);
+			return new int[0];
+		}).when(jdbc).batchUpdate(eq(INSERT_USER_EVENT_BY_USER_ID_QUERY), any(SqlParameterSource[].class));
+	}
+
+	private List<Object> getUserIds(SqlParameterSource[] parameters) {
+		return Arrays.stream(parameters).map(parameter -> parameter.getValue("userId")).toList();
+	}
+
+	private List<Object> getWrittenUserIds() {
+		return batches.stream().flatMap(List::stream).toList();
+	}
+}
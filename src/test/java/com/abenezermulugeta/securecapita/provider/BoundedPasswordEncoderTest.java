@@ -0,0 +1,31 @@
+package com.abenezermulugeta.securecapita.provider;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedPasswordEncoderTest {
+	private static final String HASH = "N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy";
+	private final BoundedPasswordEncoder passwordEncoder = new BoundedPasswordEncoder(12, 1, 1, new SimpleMeterRegistry());
+
+	@AfterEach
+	void shutdown() {
+		passwordEncoder.shutdown();
+	}
+
+	@Test
+	void onlyHashesWithALowerStrengthAreUpgraded() {
+		assertTrue(passwordEncoder.upgradeEncoding("$2a$10$" + HASH));
+		assertFalse(passwordEncoder.upgradeEncoding("$2a$12$" + HASH));
+		assertFalse(passwordEncoder.upgradeEncoding("$2a$14$" + HASH));
+	}
+
+	@Test
+	void valuesThatAreNotBCryptHashesAreNotUpgraded() {
+		assertFalse(passwordEncoder.upgradeEncoding(null));
+		assertFalse(passwordEncoder.upgradeEncoding("{noop}password"));
+	}
+}
@@ -0,0 +1,89 @@
+package com.abenezermulugeta.securecapita.provider;
+
+import com.abenezermulugeta.securecapita.configuration.JwtKeyProperties;
+import com.abenezermulugeta.securecapita.enumeration.KeyStatus;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.exceptions.JWTVerificationException;
+import com.auth0.jwt.exceptions.SignatureVerificationException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeyRingTest {
+	private static final String LEGACY_SECRET = "key-ring-test-legacy-secret-that-is-long-enough-for-hmac-512-signing";
+	private static final String FIRST_SECRET = "key-ring-test-first-secret-that-is-long-enough-for-hmac-512-signing-";
+	private static final String SECOND_SECRET = "key-ring-test-second-secret-that-is-long-enough-for-hmac-512-signing";
+
+	@Test
+	void verifierIsChosenByTheKeyId() {
+		KeyRing keyRing = getKeyRing(getKey("first", FIRST_SECRET, KeyStatus.VERIFY), getKey("second", SECOND_SECRET, KeyStatus.ACTIVE));
+
+		assertEquals("first", keyRing.verify(sign("first", FIRST_SECRET)).getKeyId());
+		assertEquals("second", keyRing.verify(sign("second", SECOND_SECRET)).getKeyId());
+		// Signed with the second key but claiming the first one, it is checked against the first key only
+		assertThrows(SignatureVerificationException.class, () -> keyRing.verify(sign("first", SECOND_SECRET)));
+	}
+
+	@Test
+	void retiredKeyIdIsRejected() {
+		KeyRing keyRing = getKeyRing(getKey("first", FIRST_SECRET, KeyStatus.RETIRED), getKey("second", SECOND_SECRET, KeyStatus.ACTIVE));
+
+		assertThrows(JWTVerificationException.class, () -> keyRing.verify(sign("first", FIRST_SECRET)));
+	}
+
+	@Test
+	void unknownKeyIdIsRejected() {
+		KeyRing keyRing = getKeyRing(getKey("second", SECOND_SECRET, KeyStatus.ACTIVE));
+
+		assertThrows(JWTVerificationException.class, () -> keyRing.verify(sign("unknown", SECOND_SECRET)));
+	}
+
+	@Test
+	void tokenWithoutKeyIdIsVerifiedWithTheLegacySecret() {
+		KeyRing keyRing = getKeyRing(getKey("second", SECOND_SECRET, KeyStatus.ACTIVE));
+
+		assertEquals("user@securecapita.com", keyRing.verify(sign(null, LEGACY_SECRET)).getSubject());
+		assertThrows(SignatureVerificationException.class, () -> keyRing.verify(sign(null, SECOND_SECRET)));
+	}
+
+	@Test
+	void startupFailsWithoutExactlyOneActiveKey() {
+		assertThrows(IllegalStateException.class, () -> getKeyRing(getKey("first", FIRST_SECRET, KeyStatus.VERIFY)));
+		assertThrows(IllegalStateException.class, () -> getKeyRing(getKey("first", FIRST_SECRET, KeyStatus.ACTIVE), getKey("second", SECOND_SECRET, KeyStatus.ACTIVE)));
+	}
+
+	@Test
+	void tokenOfThePreviousActiveKeyIsAcceptedAfterTheSwap() {
+		KeyRing before = getKeyRing(getKey("first", FIRST_SECRET, KeyStatus.ACTIVE), getKey("second", SECOND_SECRET, KeyStatus.VERIFY));
+		String token = JWT.create().withKeyId(before.getActiveKeyId()).withSubject("user@securecapita.com").sign(before.getActiveAlgorithm());
+
+		KeyRing after = getKeyRing(getKey("first", FIRST_SECRET, KeyStatus.VERIFY), getKey("second", SECOND_SECRET, KeyStatus.ACTIVE));
+
+		assertEquals("second", after.getActiveKeyId());
+		assertEquals("user@securecapita.com", after.verify(token).getSubject());
+	}
+
+	private KeyRing getKeyRing(JwtKeyProperties.Key... keys) {
+		JwtKeyProperties properties = new JwtKeyProperties();
+		properties.setSecret(LEGACY_SECRET);
+		properties.setKeys(List.of(keys));
+		return KeyRing.of(properties, algorithm -> JWT.require(algorithm).build());
+	}
+
+	private JwtKeyProperties.Key getKey(String id, String secret, KeyStatus status) {
+		JwtKeyProperties.Key key = new JwtKeyProperties.Key();
+		key.setId(id);
+		key.setSecret(secret);
+		key.setStatus(status);
+		return key;
+	}
+
+	private String sign(String keyId, String secret) {
+		return JWT.create().withKeyId(keyId).withSubject("user@securecapita.com").sign(HMAC512(secret.getBytes(StandardCharsets.UTF_8)));
+	}
+}
@@ -0,0 +1,178 @@
+package com.abenezermulugeta.securecapita.provider;
+
+import com.abenezermulugeta.securecapita.configuration.JwtKeyProperties;
+import com.abenezermulugeta.securecapita.domain.Role;
+import com.abenezermulugeta.securecapita.domain.User;
+import com.abenezermulugeta.securecapita.domain.UserPrincipal;
+import com.abenezermulugeta.securecapita.domain.VerifiedToken;
+import com.abenezermulugeta.securecapita.enumeration.Permission;
+import com.abenezermulugeta.securecapita.enumeration.TokenType;
+import com.abenezermulugeta.securecapita.security.RefreshTokenStore;
+import com.abenezermulugeta.securecapita.security.TokenRevocationStore;
+import com.abenezermulugeta.securecapita.service.UserService;
+import com.auth0.jwt.JWT;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.auth0.jwt.algorithms.Algorithm.HMAC512;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TokenProviderTest {
+	private static final String SECRET = "token-provider-test-secret-that-is-long-enough-for-hmac-512-signing-keys";
+
+	@Mock
+	private UserService userService;
+	@Mock
+	private TokenRevocationStore tokenRevocationStore;
+	@Mock
+	private RefreshTokenStore refreshTokenStore;
+
+	private TokenProvider tokenProvider;
+	private UserPrincipal userPrincipal;
+
+	@BeforeEach
+	void setUp() {
+		JwtKeyProperties jwtKeyProperties = new JwtKeyProperties();
+		jwtKeyProperties.setSecret(SECRET);
+		tokenProvider = new TokenProvider(userService, tokenRevocationStore, refreshTokenStore, jwtKeyProperties);
+		tokenProvider.init();
+		User user = User.builder().id(1L).email("user@securecapita.com").build();
+		userPrincipal = new UserPrincipal(user, Role.builder().name("ROLE_USER").permission("READ:USER,READ:CUSTOMER").build());
+	}
+
+	@Test
+	void accessTokenIsOnlyValidAsAccessToken() {
+		VerifiedToken accessToken = tokenProvider.verifyToken(tokenProvider.createAccessToken(userPrincipal));
+
+		assertEquals(TokenType.ACCESS, accessToken.getType());
+		assertTrue(tokenProvider.isAccessTokenValid(accessToken));
+		assertFalse(tokenProvider.isRefreshTokenValid(accessToken));
+		assertNull(tokenProvider.rotateRefreshToken(accessToken, userPrincipal));
+	}
+
+	@Test
+	void refreshTokenIsNotValidAsAccessToken() {
+		VerifiedToken refreshToken = tokenProvider.verifyToken(tokenProvider.createRefreshToken(userPrincipal));
+
+		assertEquals(TokenType.REFRESH, refreshToken.getType());
+		assertTrue(refreshToken.getAuthorities().isEmpty());
+		assertFalse(tokenProvider.isAccessTokenValid(refreshToken));
+		assertTrue(tokenProvider.isRefreshTokenValid(refreshToken));
+	}
+
+	@Test
+	void tokensWithoutTypeAreTypedByTheirClaims() {
+		String legacyAccessToken = JWT.create().withIssuer("ANI_TECH_LLC").withSubject(userPrincipal.getUsername())
+				.withArrayClaim("authorities", new String[] { "READ:USER" })
+				.withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+				.sign(HMAC512(SECRET.getBytes(StandardCharsets.UTF_8)));
+		String legacyRefreshToken = JWT.create().withIssuer("ANI_TECH_LLC").withSubject(userPrincipal.getUsername())
+				.withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+				.sign(HMAC512(SECRET.getBytes(StandardCharsets.UTF_8)));
+
+		assertTrue(tokenProvider.isAccessTokenValid(tokenProvider.verifyToken(legacyAccessToken)));
+		assertFalse(tokenProvider.isAccessTokenValid(tokenProvider.verifyToken(legacyRefreshToken)));
+	}
+
+	@Test
+	void compactPermissionsRoundTripToTheSameAuthorities() {
+		VerifiedToken accessToken = tokenProvider.verifyToken(tokenProvider.createAccessToken(userPrincipal));
+		ReflectionTestUtils.setField(tokenProvider, "compactPermissions", true);
+		String compactToken = tokenProvider.createAccessToken(userPrincipal);
+
+		DecodedJWT decodedJWT = JWT.decode(compactToken);
+		assertTrue(decodedJWT.getClaim("authorities").isMissing());
+		assertEquals(Permission.REGISTRY_VERSION, decodedJWT.getClaim("perms_v").asInt());
+		assertEquals(Set.copyOf(accessToken.getAuthorities()), Set.copyOf(tokenProvider.verifyToken(compactToken).getAuthorities()));
+		assertEquals(Set.of("READ:USER", "READ:CUSTOMER"), accessToken.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toSet()));
+	}
+
+	@Test
+	void compactPermissionsOfAnotherRegistryVersionGrantNothing() {
+		String accessToken = JWT.create().withIssuer("ANI_TECH_LLC").withSubject(userPrincipal.getUsername())
+				.withClaim("token_type", TokenType.ACCESS.name())
+				.withClaim("perms", userPrincipal.getPermissions())
+				.withClaim("perms_v", Permission.REGISTRY_VERSION + 1)
+				.withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+				.sign(HMAC512(SECRET.getBytes(StandardCharsets.UTF_8)));
+
+		assertTrue(tokenProvider.verifyToken(accessToken).getAuthorities().isEmpty());
+	}
+
+	@Test
+	void revokedAccessTokenIsNotValid() {
+		VerifiedToken accessToken = tokenProvider.verifyToken(tokenProvider.createAccessToken(userPrincipal));
+		when(tokenRevocationStore.isRevoked(any())).thenReturn(true);
+
+		assertFalse(tokenProvider.isAccessTokenValid(accessToken));
+	}
+
+	@Test
+	void refreshTokenIsRotatedWithinItsFamily() {
+		VerifiedToken refreshToken = tokenProvider.verifyToken(tokenProvider.createRefreshToken(userPrincipal));
+		when(refreshTokenStore.rotate(eq(refreshToken.getFamilyId()), eq(refreshToken.getTokenId()), anyString(), any())).thenReturn(true);
+
+		VerifiedToken rotatedToken = tokenProvider.verifyToken(tokenProvider.rotateRefreshToken(refreshToken, userPrincipal));
+
+		assertEquals(refreshToken.getFamilyId(), rotatedToken.getFamilyId());
+		assertNotEquals(refreshToken.getTokenId(), rotatedToken.getTokenId());
+		verify(refreshTokenStore).rotate(eq(refreshToken.getFamilyId()), eq(refreshToken.getTokenId()), eq(rotatedToken.getTokenId()), any());
+	}
+
+	@Test
+	void refreshTokenRejectedByItsFamilyIsNotRotated() {
+		VerifiedToken refreshToken = tokenProvider.verifyToken(tokenProvider.createRefreshToken(userPrincipal));
+		when(refreshTokenStore.rotate(anyString(), anyString(), anyString(), any())).thenReturn(false);
+
+		assertNull(tokenProvider.rotateRefreshToken(refreshToken, userPrincipal));
+	}
+
+	@Test
+	void legacyRefreshTokenIsExchangedForAFamilyOnce() {
+		VerifiedToken legacyRefreshToken = tokenProvider.verifyToken(JWT.create().withIssuer("ANI_TECH_LLC").withSubject(userPrincipal.getUsername())
+				.withJWTId("legacy-token-id")
+				.withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+				.sign(HMAC512(SECRET.getBytes(StandardCharsets.UTF_8))));
+		when(tokenRevocationStore.revoke(legacyRefreshToken)).thenReturn(true).thenReturn(false);
+
+		VerifiedToken exchangedToken = tokenProvider.verifyToken(tokenProvider.rotateRefreshToken(legacyRefreshToken, userPrincipal));
+
+		assertNotNull(exchangedToken.getFamilyId());
+		verify(refreshTokenStore).startFamily(eq(exchangedToken.getFamilyId()), eq(1L), eq(exchangedToken.getTokenId()), any());
+		assertNull(tokenProvider.rotateRefreshToken(legacyRefreshToken, userPrincipal));
+	}
+
+	@Test
+	void legacyRefreshTokenWithoutTokenIdIsRejected() {
+		VerifiedToken legacyRefreshToken = tokenProvider.verifyToken(JWT.create().withIssuer("ANI_TECH_LLC").withSubject(userPrincipal.getUsername())
+				.withExpiresAt(new Date(System.currentTimeMillis() + 60_000))
+				.sign(HMAC512(SECRET.getBytes(StandardCharsets.UTF_8))));
+		when(tokenRevocationStore.revoke(legacyRefreshToken)).thenReturn(false);
+
+		assertNull(tokenProvider.rotateRefreshToken(legacyRefreshToken, userPrincipal));
+		verify(refreshTokenStore, never()).startFamily(anyString(), any(), anyString(), any());
+	}
+}
@@ -0,0 +1,75 @@
+package com.abenezermulugeta.securecapita.ratelimit;
+
+import com.abenezermulugeta.securecapita.exception.TooManyRequestsException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoginRateLimiterTest {
+	private SimpleMeterRegistry meterRegistry;
+	private LoginRateLimiter loginRateLimiter;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		loginRateLimiter = new LoginRateLimiter(meterRegistry);
+		ReflectionTestUtils.setField(loginRateLimiter, "ipCapacity", 4);
+		ReflectionTestUtils.setField(loginRateLimiter, "ipRefillPeriod", Duration.ofHours(1));
+		ReflectionTestUtils.setField(loginRateLimiter, "emailCapacity", 2);
+		ReflectionTestUtils.setField(loginRateLimiter, "emailRefillPeriod", Duration.ofHours(1));
+		ReflectionTestUtils.setField(loginRateLimiter, "maximumFailures", 3);
+		ReflectionTestUtils.setField(loginRateLimiter, "lockDuration", Duration.ofHours(1));
+		loginRateLimiter.init();
+	}
+
+	@Test
+	void attemptsOverTheEmailCapacityAreRejected() {
+		loginRateLimiter.checkLoginAllowed("10.0.0.1", "user@example.com");
+		// Emails are compared without case and surrounding spaces
+		loginRateLimiter.checkLoginAllowed("10.0.0.2", " USER@example.com");
+
+		assertThrows(TooManyRequestsException.class, () -> loginRateLimiter.checkLoginAllowed("10.0.0.3", "user@example.com"));
+		assertEquals(1.0, meterRegistry.get("securecapita.login.rejected").tag("key", "email").counter().count());
+	}
+
+	@Test
+	void attemptsOverTheIpCapacityAreRejected() {
+		for (int attempt = 0; attempt < 4; attempt++) {
+			String email = "user" + attempt + "@example.com";
+			assertDoesNotThrow(() -> loginRateLimiter.checkLoginAllowed("10.0.0.1", email));
+		}
+
+		assertThrows(TooManyRequestsException.class, () -> loginRateLimiter.checkLoginAllowed("10.0.0.1", "other@example.com"));
+		assertEquals(1.0, meterRegistry.get("securecapita.login.rejected").tag("key", "ip").counter().count());
+	}
+
+	@Test
+	void accountIsLockedOnTheFailureAfterTheMaximum() {
+		assertFalse(loginRateLimiter.loginFailed("user@example.com"));
+		assertFalse(loginRateLimiter.loginFailed("user@example.com"));
+		assertFalse(loginRateLimiter.loginFailed("user@example.com"));
+
+		assertTrue(loginRateLimiter.loginFailed("User@Example.com"));
+	}
+
+	@Test
+	void successfulLoginResetsTheFailures() {
+		loginRateLimiter.loginFailed("user@example.com");
+		loginRateLimiter.loginFailed("user@example.com");
+		loginRateLimiter.loginSucceeded("user@example.com");
+
+		assertFalse(loginRateLimiter.loginFailed("user@example.com"));
+		assertFalse(loginRateLimiter.loginFailed("user@example.com"));
+		assertFalse(loginRateLimiter.loginFailed("user@example.com"));
+		assertTrue(loginRateLimiter.loginFailed("user@example.com"));
+	}
+}
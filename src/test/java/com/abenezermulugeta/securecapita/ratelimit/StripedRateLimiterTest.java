@@ -0,0 +1,51 @@
+package com.abenezermulugeta.securecapita.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StripedRateLimiterTest {
+
+	@Test
+	void bucketIsEmptyAfterCapacityAcquisitions() {
+		StripedRateLimiter rateLimiter = new StripedRateLimiter(3, Duration.ofHours(1), 4, 16);
+
+		for (int attempt = 0; attempt < 3; attempt++) assertTrue(rateLimiter.tryAcquire("10.0.0.1"));
+		assertFalse(rateLimiter.tryAcquire("10.0.0.1"));
+		assertTrue(rateLimiter.tryAcquire("10.0.0.2"));
+	}
+
+	@Test
+	void bucketRefillsOverTheRefillPeriod() throws InterruptedException {
+		StripedRateLimiter rateLimiter = new StripedRateLimiter(1, Duration.ofMillis(50), 1, 16);
+
+		assertTrue(rateLimiter.tryAcquire("10.0.0.1"));
+		assertFalse(rateLimiter.tryAcquire("10.0.0.1"));
+		Thread.sleep(60);
+		assertTrue(rateLimiter.tryAcquire("10.0.0.1"));
+	}
+
+	@Test
+	void resetRefillsTheBucket() {
+		StripedRateLimiter rateLimiter = new StripedRateLimiter(1, Duration.ofHours(1), 4, 16);
+
+		assertTrue(rateLimiter.tryAcquire("10.0.0.1"));
+		rateLimiter.reset("10.0.0.1");
+		assertTrue(rateLimiter.tryAcquire("10.0.0.1"));
+	}
+
+	@Test
+	void leastRecentlyUsedBucketIsDroppedWhenTheStripeIsFull() {
+		StripedRateLimiter rateLimiter = new StripedRateLimiter(1, Duration.ofHours(1), 1, 2);
+
+		assertTrue(rateLimiter.tryAcquire("10.0.0.1"));
+		assertTrue(rateLimiter.tryAcquire("10.0.0.2"));
+		assertTrue(rateLimiter.tryAcquire("10.0.0.3"));
+		// The bucket of the first key was dropped, it starts full again
+		assertTrue(rateLimiter.tryAcquire("10.0.0.1"));
+		assertFalse(rateLimiter.tryAcquire("10.0.0.3"));
+	}
+}
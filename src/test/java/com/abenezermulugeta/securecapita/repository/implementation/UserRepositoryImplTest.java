@@ -0,0 +1,238 @@
+package com.abenezermulugeta.securecapita.repository.implementation;
+
+import com.abenezermulugeta.securecapita.cache.UserCache;
+import com.abenezermulugeta.securecapita.domain.Role;
+import com.abenezermulugeta.securecapita.domain.User;
+import com.abenezermulugeta.securecapita.domain.UserPrincipal;
+import com.abenezermulugeta.securecapita.dto.ImportReport;
+import com.abenezermulugeta.securecapita.email.EmailOutbox;
+import com.abenezermulugeta.securecapita.event.UserEventWriter;
+import com.abenezermulugeta.securecapita.exception.ApiException;
+import com.abenezermulugeta.securecapita.provider.BoundedPasswordEncoder;
+import com.abenezermulugeta.securecapita.repository.RoleRepository;
+import com.abenezermulugeta.securecapita.security.TokenRevocationStore;
+import com.abenezermulugeta.securecapita.sms.SmsOutbox;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.quality.Strictness;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static com.abenezermulugeta.securecapita.enumeration.VerificationType.ACCOUNT;
+import static com.abenezermulugeta.securecapita.query.UserQuery.DELETE_VERIFICATION_CODE_BY_ID_QUERY;
+import static com.abenezermulugeta.securecapita.query.UserQuery.INSERT_USER_QUERY;
+import static com.abenezermulugeta.securecapita.query.UserQuery.SELECT_EXISTING_EMAILS_QUERY;
+import static com.abenezermulugeta.securecapita.query.UserQuery.SELECT_USER_BY_EMAIL_AND_CODE_FOR_UPDATE_QUERY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.withSettings;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UserRepositoryImplTest {
+	@Mock
+	private NamedParameterJdbcTemplate jdbc;
+	@Mock
+	private RoleRepository<Role> roleRepository;
+	@Mock
+	private BoundedPasswordEncoder passwordEncoder;
+	@Mock
+	private UserCache userCache;
+	@Mock
+	private UserEventWriter userEventWriter;
+	@Mock
+	private TokenRevocationStore tokenRevocationStore;
+	@Mock
+	private SmsOutbox smsOutbox;
+	@Mock
+	private EmailOutbox emailOutbox;
+	@Mock
+	private TransactionTemplate transactionTemplate;
+	private UserRepositoryImpl userRepository;
+
+	@BeforeEach
+	void setUp() {
+		userRepository = new UserRepositoryImpl(jdbc, roleRepository, passwordEncoder, userCache, userEventWriter, tokenRevocationStore,
+				smsOutbox, emailOutbox, transactionTemplate, Validation.buildDefaultValidatorFactory().getValidator());
+		ReflectionTestUtils.setField(userRepository, "importChunkSize", 10);
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+		lenient().doAnswer(invocation -> {
+			invocation.<Consumer<Object>>getArgument(0).accept(null);
+			return null;
+		}).when(transactionTemplate).executeWithoutResult(any());
+		lenient().when(passwordEncoder.encodeAll(anyList())).thenAnswer(invocation ->
+				invocation.<List<String>>getArgument(0).stream().map(password -> "hash-" + password).toList());
+	}
+
+	@AfterEach
+	void tearDown() {
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Test
+	void everyRowThatIsNotImportedIsReportedOnce() {
+		when(jdbc.queryForList(eq(SELECT_EXISTING_EMAILS_QUERY), anyMap(), eq(String.class))).thenReturn(List.of("taken@example.com"));
+
+		ImportReport report = userRepository.importUsers(List.of(
+				getUser("first@example.com"),
+				getUser("taken@example.com"),
+				getUser("First@example.com"),
+				getUser(null),
+				getUser("second@example.com")));
+
+		assertEquals(5, report.getTotal());
+		assertEquals(2, report.getImported());
+		assertEquals(List.of(2, 3, 4), report.getFailures().stream().map(ImportReport.Failure::getRow).toList());
+		assertEquals(List.of("Email already in use.", "Email repeated in the import.", "Email name cannot be empty."),
+				report.getFailures().stream().map(ImportReport.Failure::getReason).toList());
+		verify(passwordEncoder).encodeAll(List.of("password", "password"));
+		verify(emailOutbox).enqueueAll(eq(List.of(getUser("first@example.com"), getUser("second@example.com"))), anyList(), eq(ACCOUNT));
+	}
+
+	@Test
+	void emailTakenDuringTheImportOnlyFailsItsRow() {
+		when(jdbc.queryForList(eq(SELECT_EXISTING_EMAILS_QUERY), anyMap(), eq(String.class)))
+				.thenReturn(List.of())
+				.thenReturn(List.of("raced@example.com"));
+		when(jdbc.batchUpdate(eq(INSERT_USER_QUERY), any(SqlParameterSource[].class)))
+				.thenThrow(new DuplicateKeyException("Duplicate entry 'raced@example.com' for key 'UQ_Users_Email'"))
+				.thenReturn(new int[] { 1, 1 });
+
+		ImportReport report = userRepository.importUsers(List.of(
+				getUser("first@example.com"),
+				getUser("raced@example.com"),
+				getUser("second@example.com")));
+
+		assertEquals(2, report.getImported());
+		assertEquals(1, report.getFailures().size());
+		assertEquals(2, report.getFailures().get(0).getRow());
+		assertEquals("Email already in use.", report.getFailures().get(0).getReason());
+		// The retry reuses the hashes, the passwords are hashed once and outside of the transaction
+		verify(passwordEncoder, times(1)).encodeAll(anyList());
+		verify(transactionTemplate, times(2)).executeWithoutResult(any());
+	}
+
+	@Test
+	void failedChunkOnlyReportsTheRowsItTriedToInsert() {
+		ReflectionTestUtils.setField(userRepository, "importChunkSize", 2);
+		when(jdbc.queryForList(eq(SELECT_EXISTING_EMAILS_QUERY), anyMap(), eq(String.class)))
+				.thenReturn(List.of("taken@example.com"))
+				.thenReturn(List.of());
+		when(jdbc.batchUpdate(eq(INSERT_USER_QUERY), any(SqlParameterSource[].class)))
+				.thenThrow(new DataAccessResourceFailureException("Connection lost"))
+				.thenReturn(new int[] { 1, 1 });
+
+		List<User> users = IntStream.rangeClosed(1, 4).mapToObj(row -> getUser(row == 1 ? "taken@example.com" : "user" + row + "@example.com")).toList();
+		ImportReport report = userRepository.importUsers(users);
+
+		assertEquals(2, report.getImported());
+		assertEquals(List.of(1, 2), report.getFailures().stream().map(ImportReport.Failure::getRow).toList());
+		assertEquals(List.of("Email already in use.", "An error occurred. Please try again."),
+				report.getFailures().stream().map(ImportReport.Failure::getReason).toList());
+	}
+
+	@Test
+	void registrationHashesThePasswordBeforeTheTransaction() {
+		when(passwordEncoder.encode("password")).thenReturn("hash-password");
+		when(transactionTemplate.execute(any())).thenReturn(getUser("first@example.com"));
+
+		userRepository.create(getUser("first@example.com"));
+
+		InOrder inOrder = inOrder(passwordEncoder, transactionTemplate);
+		inOrder.verify(passwordEncoder).encode("password");
+		inOrder.verify(transactionTemplate).execute(any());
+	}
+
+	@Test
+	void verificationCodeIsConsumedWithOneLockingReadAndOneDelete() throws Exception {
+		answerVerificationCode(false);
+		when(jdbc.update(DELETE_VERIFICATION_CODE_BY_ID_QUERY, Map.of("id", 7L))).thenReturn(1);
+
+		UserPrincipal userPrincipal = userRepository.verifyCode("first@example.com", "ABCDEFGH");
+
+		assertEquals(1L, userPrincipal.getUserId());
+		verify(jdbc).query(eq(SELECT_USER_BY_EMAIL_AND_CODE_FOR_UPDATE_QUERY), eq(Map.of("email", "first@example.com", "code", "ABCDEFGH")), any(ResultSetExtractor.class));
+		verify(jdbc).update(DELETE_VERIFICATION_CODE_BY_ID_QUERY, Map.of("id", 7L));
+	}
+
+	@Test
+	void verificationCodeConsumedByAnotherRequestIsRejected() throws Exception {
+		answerVerificationCode(false);
+		when(jdbc.update(DELETE_VERIFICATION_CODE_BY_ID_QUERY, Map.of("id", 7L))).thenReturn(0);
+
+		ApiException exception = assertThrows(ApiException.class, () -> userRepository.verifyCode("first@example.com", "ABCDEFGH"));
+
+		assertEquals("This code is not valid. Please try logging in again.", exception.getMessage());
+	}
+
+	@Test
+	void unknownVerificationCodeIsRejectedWithoutADelete() {
+		when(jdbc.query(eq(SELECT_USER_BY_EMAIL_AND_CODE_FOR_UPDATE_QUERY), anyMap(), any(ResultSetExtractor.class))).thenReturn(null);
+
+		ApiException exception = assertThrows(ApiException.class, () -> userRepository.verifyCode("first@example.com", "ABCDEFGH"));
+
+		assertEquals("This code is not valid. Please try logging in again.", exception.getMessage());
+		verify(jdbc, never()).update(eq(DELETE_VERIFICATION_CODE_BY_ID_QUERY), anyMap());
+	}
+
+	@Test
+	void expiredVerificationCodeIsRejected() throws Exception {
+		answerVerificationCode(true);
+
+		ApiException exception = assertThrows(ApiException.class, () -> userRepository.verifyCode("first@example.com", "ABCDEFGH"));
+
+		assertEquals("This code has expired. Please login again.", exception.getMessage());
+		verify(jdbc, never()).update(eq(DELETE_VERIFICATION_CODE_BY_ID_QUERY), anyMap());
+	}
+
+	// The locked row of the code joined with its user, as returned by SELECT_USER_BY_EMAIL_AND_CODE_FOR_UPDATE_QUERY
+	private void answerVerificationCode(boolean expired) throws Exception {
+		// Lenient, the columns that aren't stubbed are read as null
+		ResultSet resultSet = mock(ResultSet.class, withSettings().strictness(Strictness.LENIENT));
+		when(resultSet.next()).thenReturn(true);
+		when(resultSet.getLong("verification_id")).thenReturn(7L);
+		when(resultSet.getBoolean("is_expired")).thenReturn(expired);
+		when(resultSet.getLong("id")).thenReturn(1L);
+		when(resultSet.getString("email")).thenReturn("first@example.com");
+		when(resultSet.getTimestamp("created_at")).thenReturn(Timestamp.valueOf("2026-10-17 10:00:00"));
+		when(resultSet.getLong("role_id")).thenReturn(1L);
+		when(roleRepository.get(1L)).thenReturn(Role.builder().id(1L).name("ROLE_USER").permission("READ:USER").build());
+		when(jdbc.query(eq(SELECT_USER_BY_EMAIL_AND_CODE_FOR_UPDATE_QUERY), anyMap(), any(ResultSetExtractor.class)))
+				.thenAnswer(invocation -> invocation.<ResultSetExtractor<?>>getArgument(2).extractData(resultSet));
+	}
+
+	private User getUser(String email) {
+		return User.builder().firstName("First").lastName("Last").email(email).password("password").build();
+	}
+}
@@ -0,0 +1,100 @@
+package com.abenezermulugeta.securecapita.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+
+import static com.abenezermulugeta.securecapita.query.TokenQuery.REVOKE_REFRESH_TOKEN_FAMILY_QUERY;
+import static com.abenezermulugeta.securecapita.query.TokenQuery.ROTATE_REFRESH_TOKEN_QUERY;
+import static com.abenezermulugeta.securecapita.query.TokenQuery.SELECT_REFRESH_TOKEN_FAMILY_QUERY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class RefreshTokenStoreTest {
+	@Mock
+	private NamedParameterJdbcTemplate jdbc;
+	private SimpleMeterRegistry meterRegistry;
+	private RefreshTokenStore refreshTokenStore;
+
+	@BeforeEach
+	void setUp() {
+		meterRegistry = new SimpleMeterRegistry();
+		refreshTokenStore = new RefreshTokenStore(jdbc, meterRegistry);
+		ReflectionTestUtils.setField(refreshTokenStore, "maximumSize", 100L);
+		ReflectionTestUtils.setField(refreshTokenStore, "timeToLive", Duration.ofMinutes(10));
+		refreshTokenStore.init();
+	}
+
+	@Test
+	void currentTokenIsRotated() {
+		when(jdbc.update(eq(ROTATE_REFRESH_TOKEN_QUERY), any(SqlParameterSource.class))).thenReturn(1);
+
+		assertTrue(refreshTokenStore.rotate("family", "current", "next", getExpiry()));
+		verify(jdbc, never()).query(eq(SELECT_REFRESH_TOKEN_FAMILY_QUERY), anyMap(), any(RowCallbackHandler.class));
+	}
+
+	@Test
+	void reusedTokenRevokesItsFamily() throws Exception {
+		when(jdbc.update(eq(ROTATE_REFRESH_TOKEN_QUERY), any(SqlParameterSource.class))).thenReturn(0);
+		// The family has moved on to a later token
+		answerFamily("next", false);
+
+		assertFalse(refreshTokenStore.rotate("family", "current", "copy", getExpiry()));
+
+		verify(jdbc).update(REVOKE_REFRESH_TOKEN_FAMILY_QUERY, Map.of("familyId", "family"));
+		assertEquals(1.0, meterRegistry.get("securecapita.refresh.token.reuse").counter().count());
+		// The holder of the latest token is logged out as well, without another query
+		assertFalse(refreshTokenStore.rotate("family", "next", "after", getExpiry()));
+		verify(jdbc, times(1)).update(eq(ROTATE_REFRESH_TOKEN_QUERY), any(SqlParameterSource.class));
+	}
+
+	@Test
+	void tokenOfARevokedFamilyIsRejectedWithoutCountingAReuse() throws Exception {
+		when(jdbc.update(eq(ROTATE_REFRESH_TOKEN_QUERY), any(SqlParameterSource.class))).thenReturn(0);
+		answerFamily("current", true);
+
+		assertFalse(refreshTokenStore.rotate("family", "current", "next", getExpiry()));
+
+		verify(jdbc, never()).update(eq(REVOKE_REFRESH_TOKEN_FAMILY_QUERY), anyMap());
+		assertEquals(0.0, meterRegistry.get("securecapita.refresh.token.reuse").counter().count());
+		assertFalse(refreshTokenStore.rotate("family", "current", "next", getExpiry()));
+		verify(jdbc, times(1)).update(eq(ROTATE_REFRESH_TOKEN_QUERY), any(SqlParameterSource.class));
+	}
+
+	private void answerFamily(String tokenId, boolean revoked) throws Exception {
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.getBoolean("revoked")).thenReturn(revoked);
+		if (!revoked) when(resultSet.getString("token_id")).thenReturn(tokenId);
+		doAnswer(invocation -> {
+			invocation.<RowCallbackHandler>getArgument(2).processRow(resultSet);
+			return null;
+		}).when(jdbc).query(eq(SELECT_REFRESH_TOKEN_FAMILY_QUERY), anyMap(), any(RowCallbackHandler.class));
+	}
+
+	private Date getExpiry() {
+		return new Date(System.currentTimeMillis() + 60_000);
+	}
+}
@@ -0,0 +1,141 @@
+package com.abenezermulugeta.securecapita.security;
+
+import com.abenezermulugeta.securecapita.domain.VerifiedToken;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Date;
+import java.util.Map;
+
+import static com.abenezermulugeta.securecapita.query.TokenQuery.SELECT_REVOKED_TOKENS_QUERY;
+import static com.abenezermulugeta.securecapita.query.TokenQuery.SELECT_USER_TOKEN_REVOCATIONS_QUERY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class TokenRevocationStoreTest {
+	@Mock
+	private NamedParameterJdbcTemplate jdbc;
+	private TokenRevocationStore tokenRevocationStore;
+
+	@BeforeEach
+	void setUp() {
+		tokenRevocationStore = new TokenRevocationStore(jdbc, new SimpleMeterRegistry());
+		ReflectionTestUtils.setField(tokenRevocationStore, "expectedRevocations", 1000);
+		ReflectionTestUtils.setField(tokenRevocationStore, "falsePositiveRate", 0.01);
+		ReflectionTestUtils.setField(tokenRevocationStore, "syncOverlap", Duration.ofMinutes(1));
+		tokenRevocationStore.init();
+	}
+
+	@Test
+	void revokedTokenIdIsFoundAndOthersAreNot() {
+		tokenRevocationStore.revoke(getToken("revoked", 1L, Instant.now()));
+
+		assertTrue(tokenRevocationStore.isRevoked(getToken("revoked", 1L, Instant.now())));
+		for (int i = 0; i < 100; i++) assertFalse(tokenRevocationStore.isRevoked(getToken("valid-" + i, 1L, Instant.now())));
+	}
+
+	@Test
+	void expiredRevocationIsNotHeld() {
+		VerifiedToken expiredToken = getToken("expired", 1L, Instant.now()).toBuilder().expiresAt(new Date(System.currentTimeMillis() - 1000)).build();
+
+		tokenRevocationStore.revoke(expiredToken);
+
+		assertFalse(tokenRevocationStore.isRevoked(expiredToken));
+	}
+
+	@Test
+	void userRevocationCoversTheTokensIssuedBeforeIt() {
+		Instant issuedBefore = Instant.now().truncatedTo(ChronoUnit.SECONDS).minusSeconds(5);
+
+		tokenRevocationStore.revokeAll(1L);
+
+		assertTrue(tokenRevocationStore.isRevoked(getToken("before", 1L, issuedBefore)));
+		assertTrue(tokenRevocationStore.isRevoked(getToken(null, 1L, issuedBefore)));
+		assertFalse(tokenRevocationStore.isRevoked(getToken("other-user", 2L, issuedBefore)));
+		assertFalse(tokenRevocationStore.isRevoked(getToken("after", 1L, Instant.now().plusSeconds(5))));
+	}
+
+	@Test
+	void syncLoadsTheRevocationsOfOtherInstancesAndReadsAgainWithinTheOverlap() throws Exception {
+		Instant createdAt = Instant.parse("2026-10-17T10:00:00Z");
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.getString("token_id")).thenReturn("synced");
+		when(resultSet.getTimestamp("expires_at")).thenReturn(Timestamp.from(Instant.now().plusSeconds(60)));
+		when(resultSet.getTimestamp("created_at")).thenReturn(Timestamp.from(createdAt));
+		doAnswer(invocation -> {
+			invocation.<RowCallbackHandler>getArgument(2).processRow(resultSet);
+			return null;
+		}).when(jdbc).query(eq(SELECT_REVOKED_TOKENS_QUERY), anyMap(), any(RowCallbackHandler.class));
+
+		tokenRevocationStore.sync();
+		tokenRevocationStore.sync();
+
+		assertTrue(tokenRevocationStore.isRevoked(getToken("synced", 1L, Instant.now())));
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<Map<String, Object>> parameters = ArgumentCaptor.forClass(Map.class);
+		// The first sync of init() reads every row, the next ones start one overlap before the latest row loaded
+		verify(jdbc, times(3)).query(eq(SELECT_REVOKED_TOKENS_QUERY), parameters.capture(), any(RowCallbackHandler.class));
+		assertEquals(Timestamp.from(Instant.EPOCH), parameters.getAllValues().get(0).get("createdFrom"));
+		assertEquals(Timestamp.from(createdAt.minus(Duration.ofMinutes(1))), parameters.getAllValues().get(2).get("createdFrom"));
+	}
+
+	@Test
+	void syncReadsTheUserRevocationsUpdatedWithinTheOverlap() throws Exception {
+		Instant updatedAt = Instant.parse("2026-10-17T10:00:00Z");
+		Instant before = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+		ResultSet resultSet = mock(ResultSet.class);
+		when(resultSet.getLong("user_id")).thenReturn(2L);
+		when(resultSet.getTimestamp("revoked_before")).thenReturn(Timestamp.from(before));
+		when(resultSet.getTimestamp("updated_at")).thenReturn(Timestamp.from(updatedAt));
+		// Lenient, the sync also reads the revoked tokens with the same method
+		lenient().doAnswer(invocation -> {
+			invocation.<RowCallbackHandler>getArgument(2).processRow(resultSet);
+			return null;
+		}).when(jdbc).query(eq(SELECT_USER_TOKEN_REVOCATIONS_QUERY), anyMap(), any(RowCallbackHandler.class));
+
+		tokenRevocationStore.sync();
+		tokenRevocationStore.sync();
+
+		assertTrue(tokenRevocationStore.isRevoked(getToken(null, 2L, before.minusSeconds(5))));
+		assertFalse(tokenRevocationStore.isRevoked(getToken(null, 2L, before.plusSeconds(5))));
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<Map<String, Object>> parameters = ArgumentCaptor.forClass(Map.class);
+		verify(jdbc, times(3)).query(eq(SELECT_USER_TOKEN_REVOCATIONS_QUERY), parameters.capture(), any(RowCallbackHandler.class));
+		assertEquals(Timestamp.from(Instant.EPOCH), parameters.getAllValues().get(0).get("updatedFrom"));
+		assertEquals(Timestamp.from(updatedAt.minus(Duration.ofMinutes(1))), parameters.getAllValues().get(2).get("updatedFrom"));
+	}
+
+	private VerifiedToken getToken(String tokenId, Long userId, Instant issuedAt) {
+		return VerifiedToken.builder()
+				.tokenId(tokenId)
+				.subject("user@example.com")
+				.userId(userId)
+				.issuedAt(Date.from(issuedAt))
+				.expiresAt(Date.from(Instant.now().plusSeconds(60)))
+				.build();
+	}
+}
@@ -0,0 +1,67 @@
+package com.abenezermulugeta.securecapita.service.implementation;
+
+import com.abenezermulugeta.securecapita.dto.KeysetPage;
+import com.abenezermulugeta.securecapita.dto.UserEventDTO;
+import com.abenezermulugeta.securecapita.exception.ApiException;
+import com.abenezermulugeta.securecapita.repository.EventRepository;
+import com.abenezermulugeta.securecapita.utils.CursorUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class EventServiceImplTest {
+	private static final LocalDateTime CREATED_AT = LocalDateTime.of(2023, 9, 6, 10, 15, 30, 123456789);
+	@Mock
+	private EventRepository eventRepository;
+	@InjectMocks
+	private EventServiceImpl eventService;
+
+	@Test
+	void nextCursorDecodesToTheSortKeyOfTheLastRow() {
+		when(eventRepository.getUserEvents(1L, null, null, 3)).thenReturn(List.of(getEvent(30L, CREATED_AT.plusSeconds(1)), getEvent(20L, CREATED_AT), getEvent(10L, CREATED_AT)));
+
+		KeysetPage<UserEventDTO> page = eventService.getUserEvents(1L, null, 2);
+		eventService.getUserEvents(1L, page.getNextCursor(), 2);
+
+		assertEquals(2, page.getItems().size());
+		// The nanoseconds of the timestamp survive the round trip, otherwise rows with the same second would be skipped
+		verify(eventRepository).getUserEvents(1L, CREATED_AT, 20L, 3);
+	}
+
+	@Test
+	void lastPageHasNoCursor() {
+		when(eventRepository.getUserEvents(1L, null, null, 3)).thenReturn(List.of(getEvent(10L, CREATED_AT)));
+
+		KeysetPage<UserEventDTO> page = eventService.getUserEvents(1L, "", 2);
+
+		assertEquals(1, page.getItems().size());
+		assertNull(page.getNextCursor());
+	}
+
+	@Test
+	void invalidCursorIsRejected() {
+		assertThrows(ApiException.class, () -> eventService.getUserEvents(1L, "not base64!", 2));
+		assertThrows(ApiException.class, () -> eventService.getUserEvents(1L, CursorUtils.encode(CREATED_AT), 2));
+		assertThrows(ApiException.class, () -> eventService.getUserEvents(1L, CursorUtils.encode(CREATED_AT, 20L, 1L), 2));
+		assertThrows(ApiException.class, () -> eventService.getUserEvents(1L, CursorUtils.encode("yesterday", 20L), 2));
+		assertThrows(ApiException.class, () -> eventService.getUserEvents(1L, CursorUtils.encode(CREATED_AT, "twenty"), 2));
+		verifyNoInteractions(eventRepository);
+	}
+
+	private UserEventDTO getEvent(Long id, LocalDateTime createdAt) {
+		return UserEventDTO.builder().id(id).type("LOGIN_ATTEMPT").createdAt(createdAt).build();
+	}
+}
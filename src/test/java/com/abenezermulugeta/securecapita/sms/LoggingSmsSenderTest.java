@@ -0,0 +1,20 @@
+package com.abenezermulugeta.securecapita.sms;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LoggingSmsSenderTest {
+
+	@Test
+	void startsOnlyInTheDevAndTestProfiles() {
+		MockEnvironment environment = new MockEnvironment();
+
+		environment.setActiveProfiles("dev");
+		assertDoesNotThrow(() -> new LoggingSmsSender(environment).send("0911000001", "Your code is 123456"));
+		environment.setActiveProfiles("prod");
+		assertThrows(IllegalStateException.class, () -> new LoggingSmsSender(environment));
+	}
+}
@@ -0,0 +1,183 @@
+package com.abenezermulugeta.securecapita.sms;
+
+import com.abenezermulugeta.securecapita.domain.SmsMessage;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.abenezermulugeta.securecapita.query.SmsQuery.CLAIM_SMS_QUERY;
+import static com.abenezermulugeta.securecapita.query.SmsQuery.DELETE_SMS_QUERY;
+import static com.abenezermulugeta.securecapita.query.SmsQuery.GIVE_UP_SMS_QUERY;
+import static com.abenezermulugeta.securecapita.query.SmsQuery.SELECT_DUE_SMS_QUERY;
+import static com.abenezermulugeta.securecapita.query.SmsQuery.UPDATE_FAILED_SMS_QUERY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SmsDispatcherTest {
+	private static final Duration LEASE = Duration.ofMinutes(1);
+	private static final Duration INITIAL_BACKOFF = Duration.ofSeconds(5);
+	private static final Duration MAXIMUM_BACKOFF = Duration.ofMinutes(10);
+	private static final int MAXIMUM_ATTEMPTS = 6;
+	private static final int QUEUE_CAPACITY = 10;
+
+	@Mock
+	private NamedParameterJdbcTemplate jdbc;
+	@Mock
+	private TransactionTemplate transactionTemplate;
+	private final RecordingSmsSender smsSender = new RecordingSmsSender();
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private SmsDispatcher smsDispatcher;
+
+	@BeforeEach
+	void setUp() {
+		smsDispatcher = new SmsDispatcher(jdbc, transactionTemplate, smsSender, meterRegistry);
+		ReflectionTestUtils.setField(smsDispatcher, "poolSize", 1);
+		ReflectionTestUtils.setField(smsDispatcher, "queueCapacity", QUEUE_CAPACITY);
+		ReflectionTestUtils.setField(smsDispatcher, "lease", LEASE);
+		ReflectionTestUtils.setField(smsDispatcher, "maximumAttempts", MAXIMUM_ATTEMPTS);
+		ReflectionTestUtils.setField(smsDispatcher, "initialBackoff", INITIAL_BACKOFF);
+		ReflectionTestUtils.setField(smsDispatcher, "maximumBackoff", MAXIMUM_BACKOFF);
+		smsDispatcher.init();
+	}
+
+	@Test
+	void dueMessagesAreClaimedWithALeaseSentAndDeleted() throws InterruptedException {
+		claims(getMessage(1L, 0), getMessage(2L, 0));
+
+		Instant start = Instant.now();
+		smsDispatcher.dispatch();
+		smsDispatcher.shutdown();
+
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<Map<String, Object>> selectParameters = ArgumentCaptor.forClass(Map.class);
+		verify(jdbc).query(eq(SELECT_DUE_SMS_QUERY), selectParameters.capture(), any(RowMapper.class));
+		// No more messages are claimed than the queue of the pool can take
+		assertEquals(QUEUE_CAPACITY, selectParameters.getValue().get("limit"));
+		@SuppressWarnings("unchecked")
+		ArgumentCaptor<Map<String, Object>> claimParameters = ArgumentCaptor.forClass(Map.class);
+		verify(jdbc).update(eq(CLAIM_SMS_QUERY), claimParameters.capture());
+		assertEquals(List.of(1L, 2L), claimParameters.getValue().get("ids"));
+		assertBetween(start.plus(LEASE), Instant.now().plus(LEASE), (Timestamp) claimParameters.getValue().get("leaseUntil"));
+		assertEquals(List.of("0911000001: Your code is 123456", "0911000002: Your code is 123456"), smsSender.sent);
+		verify(jdbc).update(DELETE_SMS_QUERY, Map.of("id", 1L));
+		verify(jdbc).update(DELETE_SMS_QUERY, Map.of("id", 2L));
+		assertEquals(2, meterRegistry.counter("securecapita.sms.sent").count());
+	}
+
+	@Test
+	void nothingIsClaimedWhenNoMessageIsDue() throws InterruptedException {
+		claims();
+
+		smsDispatcher.dispatch();
+		smsDispatcher.shutdown();
+
+		verify(jdbc, never()).update(eq(CLAIM_SMS_QUERY), anyMap());
+		assertTrue(smsSender.sent.isEmpty());
+	}
+
+	@Test
+	void failedMessageIsRetriedWithExponentialBackoff() throws InterruptedException {
+		smsSender.failing = true;
+		claims(getMessage(1L, 2));
+
+		Instant start = Instant.now();
+		smsDispatcher.dispatch();
+		smsDispatcher.shutdown();
+
+		MapSqlParameterSource parameters = getUpdate(UPDATE_FAILED_SMS_QUERY);
+		assertEquals("PENDING", parameters.getValue("status"));
+		assertEquals(3, parameters.getValue("attempts"));
+		assertEquals("The provider is down", parameters.getValue("lastError"));
+		// The third attempt waits four times the initial backoff, plus up to a fifth of it as jitter
+		Duration backoff = INITIAL_BACKOFF.multipliedBy(4);
+		assertBetween(start.plus(backoff), Instant.now().plus(backoff.plus(backoff.dividedBy(5))), (Timestamp) parameters.getValue("nextAttemptAt"));
+		verify(jdbc, never()).update(eq(DELETE_SMS_QUERY), anyMap());
+		assertEquals(1, meterRegistry.counter("securecapita.sms.retried").count());
+	}
+
+	@Test
+	void backoffStopsAtTheMaximum() throws InterruptedException {
+		ReflectionTestUtils.setField(smsDispatcher, "maximumAttempts", 100);
+		smsSender.failing = true;
+		claims(getMessage(1L, 30));
+
+		Instant start = Instant.now();
+		smsDispatcher.dispatch();
+		smsDispatcher.shutdown();
+
+		assertBetween(start.plus(MAXIMUM_BACKOFF), Instant.now().plus(MAXIMUM_BACKOFF.plus(MAXIMUM_BACKOFF.dividedBy(5))),
+				(Timestamp) getUpdate(UPDATE_FAILED_SMS_QUERY).getValue("nextAttemptAt"));
+	}
+
+	@Test
+	void messageIsGivenUpAndItsCodeClearedAfterTheMaximumNumberOfAttempts() throws InterruptedException {
+		smsSender.failing = true;
+		claims(getMessage(1L, MAXIMUM_ATTEMPTS - 1));
+
+		smsDispatcher.dispatch();
+		smsDispatcher.shutdown();
+
+		MapSqlParameterSource parameters = getUpdate(GIVE_UP_SMS_QUERY);
+		assertEquals(MAXIMUM_ATTEMPTS, parameters.getValue("attempts"));
+		assertFalse(parameters.hasValue("nextAttemptAt"));
+		verify(jdbc, never()).update(eq(UPDATE_FAILED_SMS_QUERY), any(MapSqlParameterSource.class));
+		assertEquals(1, meterRegistry.counter("securecapita.sms.failed").count());
+	}
+
+	private void claims(SmsMessage... messages) {
+		when(transactionTemplate.execute(any())).thenAnswer(invocation -> invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+		doReturn(List.of(messages)).when(jdbc).query(eq(SELECT_DUE_SMS_QUERY), anyMap(), any(RowMapper.class));
+	}
+
+	private MapSqlParameterSource getUpdate(String query) {
+		ArgumentCaptor<MapSqlParameterSource> parameters = ArgumentCaptor.forClass(MapSqlParameterSource.class);
+		verify(jdbc).update(eq(query), parameters.capture());
+		return parameters.getValue();
+	}
+
+	private SmsMessage getMessage(Long id, int attempts) {
+		return SmsMessage.builder().id(id).phone("091100000" + id).body("Your code is 123456").attempts(attempts).build();
+	}
+
+	private void assertBetween(Instant from, Instant to, Timestamp timestamp) {
+		assertFalse(timestamp.toInstant().isBefore(from), timestamp + " is before " + from);
+		assertFalse(timestamp.toInstant().isAfter(to), timestamp + " is after " + to);
+	}
+
+	private static class RecordingSmsSender implements SmsSender {
+		private final List<String> sent = new CopyOnWriteArrayList<>();
+		private volatile boolean failing;
+
+		@Override
+		public void send(String phone, String body) throws Exception {
+			if (failing) throw new Exception("The provider is down");
+			sent.add(phone + ": " + body);
+		}
+	}
+}
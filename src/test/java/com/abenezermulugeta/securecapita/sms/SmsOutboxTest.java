@@ -0,0 +1,62 @@
+package com.abenezermulugeta.securecapita.sms;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.IllegalTransactionStateException;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+
+import static com.abenezermulugeta.securecapita.query.SmsQuery.INSERT_SMS_QUERY;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SmsOutboxTest {
+	@Mock
+	private NamedParameterJdbcTemplate jdbc;
+	@Mock
+	private DataSource dataSource;
+	private DataSourceTransactionManager transactionManager;
+	private SmsOutbox smsOutbox;
+
+	// The transaction attributes are applied by a proxy, the same way the application context applies them
+	@BeforeEach
+	void setUp() {
+		transactionManager = new DataSourceTransactionManager(dataSource);
+		ProxyFactory proxyFactory = new ProxyFactory(new SmsOutbox(jdbc));
+		proxyFactory.setProxyTargetClass(true);
+		proxyFactory.addAdvice(new TransactionInterceptor(transactionManager, new AnnotationTransactionAttributeSource()));
+		smsOutbox = (SmsOutbox) proxyFactory.getProxy();
+	}
+
+	@Test
+	void enqueueOutsideOfATransactionIsRejected() {
+		assertThrows(IllegalTransactionStateException.class, () -> smsOutbox.enqueue("0911000001", "Your code is 123456"));
+		verify(jdbc, never()).update(anyString(), anyMap());
+	}
+
+	@Test
+	void enqueueJoinsTheTransactionOfTheCaller() throws Exception {
+		when(dataSource.getConnection()).thenReturn(mock(Connection.class));
+
+		new TransactionTemplate(transactionManager).executeWithoutResult(status -> smsOutbox.enqueue("0911000001", "Your code is 123456"));
+
+		verify(jdbc).update(eq(INSERT_SMS_QUERY), anyMap());
+	}
+}
@@ -0,0 +1,27 @@
+package com.abenezermulugeta.securecapita.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BCryptUtilsTest {
+
+	@Test
+	void calibrationNeverGoesBelowTheMinimumStrength() {
+		assertEquals(4, BCryptUtils.calibrate(Duration.ofNanos(1), 4, 8));
+	}
+
+	@Test
+	void calibrationStopsAtTheMaximumStrength() {
+		assertEquals(8, BCryptUtils.calibrate(Duration.ofHours(1), 4, 8));
+	}
+
+	@Test
+	void strengthIsReadFromTheHash() {
+		assertEquals(12, BCryptUtils.getStrength("$2a$12$N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy"));
+		assertEquals(-1, BCryptUtils.getStrength("{noop}password"));
+		assertEquals(-1, BCryptUtils.getStrength(null));
+	}
+}